@@ -0,0 +1,65 @@
+package com.home.lab.benchmarks;
+
+import com.home.lab.logtransformer.LogFileTransformer;
+import com.home.lab.logtransformer.TimestampSuffixLineTransformer;
+import com.home.lab.logtransformer.TransformedLogWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+// Measures the end-to-end throughput of transforming a whole log file into a new transformed file, both through a
+// read buffer and through memory mapping.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileTransformationBenchmark {
+
+    private static final int LINE_LENGTH = 128;
+
+    @Param({"1000", "1000000"})
+    private long numberOfLines;
+
+    // 0 always reads through a buffer, 1 maps every file into memory.
+    @Param({"0", "1"})
+    private long memoryMappedReadThresholdBytes;
+
+    private Path benchmarkDirectory;
+    private Path logFile;
+    private Path transformedLogFile;
+    private LogFileTransformer logFileTransformer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkDirectory = Files.createTempDirectory("file-transformation-benchmark");
+        logFile = LogFiles.createLogFile(benchmarkDirectory, numberOfLines, LINE_LENGTH);
+        transformedLogFile = benchmarkDirectory.resolve("transformed.log");
+        logFileTransformer = new LogFileTransformer(new TimestampSuffixLineTransformer(), memoryMappedReadThresholdBytes);
+    }
+
+    // Every invocation transforms into an empty file, like the first pass over a new log file would.
+    @Setup(Level.Invocation)
+    public void deleteTransformedLogFile() throws IOException {
+        Files.deleteIfExists(transformedLogFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LogFiles.deleteDirectory(benchmarkDirectory);
+    }
+
+    @Benchmark
+    public long transformWholeFile() throws IOException {
+        try (FileChannel logFileChannel = FileChannel.open(logFile, StandardOpenOption.READ);
+             TransformedLogWriter writer = TransformedLogWriter.open(transformedLogFile)) {
+            return logFileTransformer.transform(logFileChannel, 0, writer);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.home.lab.benchmarks;
+
+import com.home.lab.logtransformer.LineTransformer;
+import com.home.lab.logtransformer.RuleChainLineTransformer;
+import com.home.lab.logtransformer.TimestampSuffixLineTransformer;
+import com.home.lab.logtransformer.TransformedLogWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Measures the cost of transforming a single line. The output goes to /dev/null, so the write syscalls
+// (one per filled output buffer) are included, but the disk is not.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineTransformationBenchmark {
+
+    private static final Path DISCARDED_OUTPUT = Path.of("/dev/null");
+
+    @Param({"32", "256", "2048"})
+    private int lineLength;
+
+    private ByteBuffer line;
+    private LineTransformer timestampSuffixLineTransformer;
+    private LineTransformer ruleChainLineTransformer;
+    private TransformedLogWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] lineBytes = LogFiles.createLogLine(lineLength).getBytes(StandardCharsets.UTF_8);
+        line = ByteBuffer.allocateDirect(lineBytes.length).put(lineBytes).flip();
+        timestampSuffixLineTransformer = new TimestampSuffixLineTransformer();
+        ruleChainLineTransformer = RuleChainLineTransformer.compile(List.of(
+                "exclude contains DEBUG",
+                "extract ^(?<timestamp>\\S+) (?<text>.*)",
+                "redact \\d{4}-\\d{4}-\\d{4}-\\d{4}",
+                "encode json"));
+        writer = TransformedLogWriter.open(DISCARDED_OUTPUT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Benchmark
+    public boolean timestampSuffix() throws IOException {
+        return timestampSuffixLineTransformer.transform(line, 0, line.limit(), writer);
+    }
+
+    @Benchmark
+    public boolean ruleChain() throws IOException {
+        return ruleChainLineTransformer.transform(line, 0, line.limit(), writer);
+    }
+}
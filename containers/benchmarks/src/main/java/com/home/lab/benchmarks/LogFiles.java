@@ -0,0 +1,40 @@
+package com.home.lab.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+public class LogFiles {
+
+    // Lines look like the ones produced by the logger: an ISO timestamp, padded to the requested length.
+    public static String createLogLine(int lineLength) {
+        StringBuilder logLine = new StringBuilder(LocalDateTime.now().toString());
+        while (logLine.length() < lineLength) {
+            logLine.append(' ').append("payload");
+        }
+        logLine.setLength(lineLength);
+        return logLine.toString();
+    }
+
+    public static Path createLogFile(Path directory, long numberOfLines, int lineLength) throws IOException {
+        Path logFile = Files.createTempFile(directory, "benchmark", ".log");
+        String logLine = createLogLine(lineLength);
+        try (BufferedWriter writer = Files.newBufferedWriter(logFile)) {
+            for (long lineNumber = 0; lineNumber < numberOfLines; lineNumber++) {
+                writer.write(logLine);
+                writer.newLine();
+            }
+        }
+        return logFile;
+    }
+
+    public static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.walk(directory)) {
+            for (Path file : files.sorted((first, second) -> second.compareTo(first)).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.home.lab.benchmarks;
+
+import com.home.lab.logtransformer.LogFileTransformer;
+import com.home.lab.logtransformer.TimestampSuffixLineTransformer;
+import com.home.lab.logtransformer.TransformedLogWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+// Measures how long it takes to pick up a single new line at the end of an already transformed file.
+// With byte offsets the result should not depend on the size of the file.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResumeBenchmark {
+
+    private static final int LINE_LENGTH = 64;
+
+    @Param({"1000", "1000000", "10000000"})
+    private long numberOfLines;
+
+    private Path benchmarkDirectory;
+    private Path logFile;
+    private long byteOffsetOfLastLine;
+    private LogFileTransformer logFileTransformer;
+    private TransformedLogWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkDirectory = Files.createTempDirectory("resume-benchmark");
+        logFile = LogFiles.createLogFile(benchmarkDirectory, numberOfLines, LINE_LENGTH);
+        byteOffsetOfLastLine = Files.size(logFile) - LINE_LENGTH - System.lineSeparator().length();
+        logFileTransformer = new LogFileTransformer(new TimestampSuffixLineTransformer());
+        writer = TransformedLogWriter.open(Path.of("/dev/null"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        LogFiles.deleteDirectory(benchmarkDirectory);
+    }
+
+    @Benchmark
+    public long resumeFromLastLine() throws IOException {
+        try (FileChannel logFileChannel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            return logFileTransformer.transform(logFileChannel, byteOffsetOfLastLine, writer);
+        }
+    }
+}
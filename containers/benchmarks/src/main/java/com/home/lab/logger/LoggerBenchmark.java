@@ -0,0 +1,68 @@
+package com.home.lab.logger;
+
+import com.home.lab.benchmarks.LogFiles;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Measures how many log lines the logger can emit per second to each of its outputs. It lives in the package of the
+// logger, so it can call the emission path directly without it being part of the public API of the logger.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggerBenchmark {
+
+    private Path benchmarkDirectory;
+    private PrintStream originalStandardOutput;
+    private EmissionPlan standardOutputEmissionPlan;
+    private EmissionPlan fileEmissionPlan;
+    private EmissionPlan binaryFileEmissionPlan;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        benchmarkDirectory = Files.createTempDirectory("logger-benchmark");
+        // Standard output of the forked JVM is read by JMH, so it is redirected to keep the cost of the
+        // logger itself, and not of the harness reading millions of lines.
+        originalStandardOutput = System.out;
+        System.setOut(new PrintStream(new FileOutputStream("/dev/null")));
+        standardOutputEmissionPlan = Logger.resolveEmissionPlan(
+                CommandLineArgumentExtractor.extractCommandLineArguments(new String[]{"ltso=true"}));
+        fileEmissionPlan = Logger.resolveEmissionPlan(CommandLineArgumentExtractor.extractCommandLineArguments(
+                new String[]{"ltf=true", "plf=" + benchmarkDirectory.resolve("benchmark.log"), "mfs=1073741824"}));
+        binaryFileEmissionPlan = Logger.resolveEmissionPlan(CommandLineArgumentExtractor.extractCommandLineArguments(
+                new String[]{"ltf=true", "plf=" + benchmarkDirectory.resolve("benchmark.hlog"), "mfs=1073741824", "lfm=binary"}));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Logger.closeFileSink(fileEmissionPlan);
+        Logger.closeFileSink(binaryFileEmissionPlan);
+        System.out.close();
+        System.setOut(originalStandardOutput);
+        LogFiles.deleteDirectory(benchmarkDirectory);
+    }
+
+    @Benchmark
+    public void produceLogToStandardOutput() {
+        Logger.produceLog(standardOutputEmissionPlan, 0, sequence++);
+    }
+
+    @Benchmark
+    public void produceLogToFile() {
+        Logger.produceLog(fileEmissionPlan, 0, sequence++);
+    }
+
+    @Benchmark
+    public void produceBinaryLogToFile() {
+        Logger.produceLog(binaryFileEmissionPlan, 0, sequence++);
+    }
+}
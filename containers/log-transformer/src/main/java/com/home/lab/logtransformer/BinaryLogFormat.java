@@ -0,0 +1,101 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+public class BinaryLogFormat {
+
+    // Written by the logger at the start of every binary log file, including the rotated ones.
+    public static final byte[] FILE_HEADER = {(byte) 0x89, 'H', 'L', 'O', 'G', 1};
+
+    // Payload length (int), timestamp in epoch nanoseconds (long) and level (byte), followed by the payload.
+    public static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES + Byte.BYTES;
+    public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+    // The timestamp with a five digit year, the longest level and the separators between them.
+    public static final int MAX_RENDERED_PREFIX_LENGTH = 64;
+
+    private static final int LENGTH_POSITION = 0;
+    private static final int TIMESTAMP_POSITION = Integer.BYTES;
+    private static final int LEVEL_POSITION = Integer.BYTES + Long.BYTES;
+    private static final byte[][] LEVELS = encode("TRACE ", "DEBUG ", "INFO ", "WARN ", "ERROR ");
+    private static final byte[] UNKNOWN_LEVEL = "UNKNOWN ".getBytes(StandardCharsets.UTF_8);
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.");
+
+    // Records within the same second share the formatted date and time, only the nanoseconds are written per record.
+    private static final ThreadLocal<CachedSecond> CACHED_SECOND = ThreadLocal.withInitial(() -> new CachedSecond(Long.MIN_VALUE, new byte[0]));
+
+    // The header is read with a positional read, so the position of the channel is left untouched. A file that is
+    // still shorter than the header is treated as text, which leaves it untransformed until it has a complete line,
+    // since the header doesn't contain a line terminator.
+    public static boolean isBinaryLogFile(FileChannel logFileChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER.length);
+        logFileChannel.read(header, 0);
+        return !header.hasRemaining() && Arrays.equals(header.array(), FILE_HEADER);
+    }
+
+    // Returns the length of the payload of the record at recordStart, after checking that it is a sane one, since
+    // a corrupt length would otherwise make every following record unreadable without any sign of it.
+    public static int payloadLength(ByteBuffer source, int recordStart, long recordByteOffset) throws IOException {
+        int payloadLength = source.getInt(recordStart + LENGTH_POSITION);
+        if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_LENGTH) {
+            throw new IOException("The binary log file has a corrupt record at byte offset %d with a payload length of %d"
+                    .formatted(recordByteOffset, payloadLength));
+        }
+        return payloadLength;
+    }
+
+    // Renders the record as "<local date and time with nanoseconds> <level> <payload>" into the target, which must have
+    // room for MAX_RENDERED_PREFIX_LENGTH bytes and the payload. Line terminators in the payload become spaces, so every
+    // record stays a single line of the transformed file.
+    public static void render(ByteBuffer source, int recordStart, int payloadLength, ByteBuffer target) {
+        long epochNanos = source.getLong(recordStart + TIMESTAMP_POSITION);
+        long epochSecond = Math.floorDiv(epochNanos, 1_000_000_000L);
+        target.put(formattedSecond(epochSecond));
+        putNanos(target, (int) Math.floorMod(epochNanos, 1_000_000_000L));
+        target.put((byte) ' ');
+        int level = source.get(recordStart + LEVEL_POSITION);
+        target.put(level >= 0 && level < LEVELS.length ? LEVELS[level] : UNKNOWN_LEVEL);
+        int payloadStart = target.position();
+        target.put(target.position(), source, recordStart + RECORD_HEADER_SIZE, payloadLength);
+        target.position(payloadStart + payloadLength);
+        for (int index = payloadStart; index < target.position(); index++) {
+            byte character = target.get(index);
+            if (character == '\n' || character == '\r') {
+                target.put(index, (byte) ' ');
+            }
+        }
+    }
+
+    private static byte[] formattedSecond(long epochSecond) {
+        CachedSecond cachedSecond = CACHED_SECOND.get();
+        if (cachedSecond.epochSecond() != epochSecond) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+            cachedSecond = new CachedSecond(epochSecond, SECOND_FORMATTER.format(dateTime).getBytes(StandardCharsets.UTF_8));
+            CACHED_SECOND.set(cachedSecond);
+        }
+        return cachedSecond.formattedSecond();
+    }
+
+    private static void putNanos(ByteBuffer target, int nanos) {
+        int position = target.position();
+        for (int digit = 8; digit >= 0; digit--) {
+            target.put(position + digit, (byte) ('0' + nanos % 10));
+            nanos /= 10;
+        }
+        target.position(position + 9);
+    }
+
+    private static byte[][] encode(String... levels) {
+        return Arrays.stream(levels).map(level -> level.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+    }
+
+    private record CachedSecond(long epochSecond, byte[] formattedSecond) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.home.lab.logtransformer;
+
+import com.home.lab.logtransformer.FileStateIndex.FileState;
+import com.home.lab.logtransformer.LogTransformer.OutputCompression;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class Checkpoint {
+
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final int NUMBER_OF_FIELDS = 6;
+    private static final int NUMBER_OF_FIELDS_WITHOUT_OUTPUT_OFFSET = 4;
+    private static final String FORGOTTEN_ENTRY = "forgotten";
+    private static final String OUTPUT_COMPRESSION_ENTRY = "output";
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+");
+
+    // Only the committed progress of each file is persisted, so after a restart every file continues from the last
+    // offset whose output is known to be on disk. Returns the output compression the offsets were written with.
+    //
+    // Every shard saves its own checkpoint file next to the configured one, but all of them are read on startup, so a
+    // file that moved to this shard after the number of shards changed continues from the offset committed by its
+    // previous owner. Only the files this shard owns are kept. A file found in several checkpoints, because an old
+    // owner's checkpoint was never updated again, continues from the furthest committed offset. The forgotten files and
+    // the returned output compression are the ones of this shard's own checkpoint, if there is one.
+    //
+    // The file keys in a checkpoint contain the device number of the node that wrote it, which differs between the
+    // nodes that mount the same volume, so the files are matched by their inode, like the shards are assigned.
+    public static Optional<OutputCompression> load(Path pathToCheckpointFile, ShardAssignment shardAssignment, FileStateIndex fileStateIndex) {
+        Path pathToOwnCheckpointFile = shardAssignment.checkpointFileOf(pathToCheckpointFile);
+        Optional<CheckpointContents> ownCheckpoint = read(pathToOwnCheckpointFile);
+        Map<String, LoadedFileState> fileStates = new HashMap<>();
+        ownCheckpoint.ifPresent(checkpoint -> merge(fileStates, checkpoint, shardAssignment, checkpoint.outputCompression()));
+        OutputCompression outputCompression = ownCheckpoint.map(CheckpointContents::outputCompression).orElse(null);
+        for (Path pathToOtherCheckpointFile : findOtherCheckpointFiles(pathToCheckpointFile, pathToOwnCheckpointFile)) {
+            Optional<CheckpointContents> otherCheckpoint = read(pathToOtherCheckpointFile);
+            if (otherCheckpoint.isPresent()) {
+                outputCompression = outputCompression == null ? otherCheckpoint.get().outputCompression() : outputCompression;
+                merge(fileStates, otherCheckpoint.get(), shardAssignment, outputCompression);
+            }
+        }
+        Map<String, FileState> restoredFileStates = new HashMap<>();
+        for (LoadedFileState loadedFileState : fileStates.values()) {
+            restoredFileStates.put(findCurrentFileKey(loadedFileState), loadedFileState.fileState());
+        }
+        fileStateIndex.restore(restoredFileStates, ownCheckpoint.map(CheckpointContents::forgottenLastModifiedNanos).orElse(FileStateIndex.NOTHING_FORGOTTEN));
+        return Optional.ofNullable(outputCompression);
+    }
+
+    // Output offsets only apply to the transformed files of the same output compression, so they are dropped otherwise.
+    private static void merge(Map<String, LoadedFileState> fileStates, CheckpointContents checkpoint, ShardAssignment shardAssignment,
+                              OutputCompression outputCompression) {
+        boolean sameOutputCompression = checkpoint.outputCompression() == outputCompression;
+        for (Map.Entry<String, FileState> fileState : checkpoint.fileStates().entrySet()) {
+            if (!shardAssignment.owns(fileState.getKey())) {
+                continue;
+            }
+            FileState loadedFileState = sameOutputCompression
+                    ? fileState.getValue()
+                    : fileState.getValue().committed(fileState.getValue().committedByteOffset(), fileState.getValue().outputSegment(),
+                    FileStateIndex.UNKNOWN_OUTPUT_OFFSET);
+            fileStates.merge(ShardAssignment.shardKey(fileState.getKey()), new LoadedFileState(fileState.getKey(), loadedFileState),
+                    (known, loaded) -> loaded.fileState().committedByteOffset() > known.fileState().committedByteOffset() ? loaded : known);
+        }
+    }
+
+    // The file key of the file on this node, if it still has the name it was saved with. Otherwise the saved key is
+    // kept, which only matches if the file was saved on this node.
+    private static String findCurrentFileKey(LoadedFileState loadedFileState) {
+        try {
+            String currentFileKey = String.valueOf(Files.readAttributes(loadedFileState.fileState().logFile(), BasicFileAttributes.class).fileKey());
+            return ShardAssignment.shardKey(currentFileKey).equals(ShardAssignment.shardKey(loadedFileState.fileKey()))
+                    ? currentFileKey
+                    : loadedFileState.fileKey();
+        } catch (IOException exception) {
+            return loadedFileState.fileKey();
+        }
+    }
+
+    private static List<Path> findOtherCheckpointFiles(Path pathToCheckpointFile, Path pathToOwnCheckpointFile) {
+        try (Stream<Path> siblings = Files.list(pathToCheckpointFile.toAbsolutePath().getParent())) {
+            return siblings
+                    .filter(sibling -> sibling.getFileName().equals(pathToCheckpointFile.getFileName())
+                            || ShardAssignment.isShardCheckpointFile(pathToCheckpointFile, sibling))
+                    .filter(sibling -> !sibling.getFileName().equals(pathToOwnCheckpointFile.getFileName()))
+                    .sorted()
+                    .toList();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            System.err.printf("Could not look for the checkpoint files of other shards next to %s%n", pathToCheckpointFile);
+            return List.of();
+        }
+    }
+
+    private static Optional<CheckpointContents> read(Path pathToCheckpointFile) {
+        if (Files.notExists(pathToCheckpointFile)) {
+            return Optional.empty();
+        }
+        Map<String, FileState> fileStates = new HashMap<>();
+        long forgottenLastModifiedNanos = FileStateIndex.NOTHING_FORGOTTEN;
+        OutputCompression outputCompression = null;
+        try (BufferedReader reader = Files.newBufferedReader(pathToCheckpointFile)) {
+            String checkpointLine;
+            long loadTimeMillis = System.currentTimeMillis();
+            while ((checkpointLine = reader.readLine()) != null) {
+                // The path is the last field, so a path containing the separator is still read as a whole.
+                String[] fields = checkpointLine.split(FIELD_SEPARATOR, NUMBER_OF_FIELDS);
+                if (fields.length == 2 && fields[0].equals(FORGOTTEN_ENTRY)) {
+                    forgottenLastModifiedNanos = Long.parseLong(fields[1]);
+                    continue;
+                }
+                if (fields.length == 2 && fields[0].equals(OUTPUT_COMPRESSION_ENTRY)) {
+                    outputCompression = OutputCompression.valueOf(fields[1]);
+                    continue;
+                }
+                // Checkpoints written before output offsets or output segments were tracked have fewer fields, and since
+                // the path is the last one, a line of an older checkpoint can look like it has more of them.
+                int numberOfFields = findNumberOfFields(fields);
+                if (numberOfFields < NUMBER_OF_FIELDS_WITHOUT_OUTPUT_OFFSET) {
+                    System.err.printf("Skipping a malformed checkpoint entry: %s%n", checkpointLine);
+                    continue;
+                }
+                if (numberOfFields != fields.length) {
+                    fields = checkpointLine.split(FIELD_SEPARATOR, numberOfFields);
+                }
+                long byteOffset = Long.parseLong(fields[0]);
+                long lastModifiedNanos = Long.parseLong(fields[1]);
+                long outputOffset = numberOfFields > NUMBER_OF_FIELDS_WITHOUT_OUTPUT_OFFSET ? Long.parseLong(fields[3]) : FileStateIndex.UNKNOWN_OUTPUT_OFFSET;
+                long outputSegment = numberOfFields == NUMBER_OF_FIELDS ? Long.parseLong(fields[4]) : FileStateIndex.NO_OUTPUT_SEGMENT;
+                Path logFile = Path.of(fields[numberOfFields - 1]);
+                fileStates.put(fields[2], new FileState(logFile, lastModifiedNanos, byteOffset, byteOffset, outputSegment, outputOffset, loadTimeMillis));
+            }
+            return Optional.of(new CheckpointContents(fileStates, forgottenLastModifiedNanos, outputCompression));
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            System.err.printf("Could not load the checkpoint file %s, its log files will be transformed from the beginning%n", pathToCheckpointFile);
+            return Optional.empty();
+        }
+    }
+
+    public static synchronized void save(Path pathToCheckpointFile, FileStateIndex fileStateIndex, OutputCompression outputCompression) {
+        // Writing to a temporary file, forcing it to disk and moving it over the old one keeps the checkpoint intact
+        // if we crash midway, even if the whole node goes down.
+        Path temporaryCheckpointFile = pathToCheckpointFile.resolveSibling(pathToCheckpointFile.getFileName() + ".tmp");
+        try {
+            try (FileChannel checkpointChannel = FileChannel.open(temporaryCheckpointFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(checkpointChannel), StandardCharsets.UTF_8))) {
+                writer.write(OUTPUT_COMPRESSION_ENTRY + FIELD_SEPARATOR + outputCompression.name());
+                writer.newLine();
+                if (fileStateIndex.forgottenLastModifiedNanos() != FileStateIndex.NOTHING_FORGOTTEN) {
+                    writer.write(FORGOTTEN_ENTRY + FIELD_SEPARATOR + fileStateIndex.forgottenLastModifiedNanos());
+                    writer.newLine();
+                }
+                for (Map.Entry<String, FileState> fileState : fileStateIndex.entries()) {
+                    // A file with uncommitted progress must be read again from its committed offset after a restart,
+                    // so its modification time is not persisted and the first scan always picks it up.
+                    long lastModifiedNanos = fileState.getValue().isCommitted() ? fileState.getValue().lastModifiedNanos() : FileStateIndex.UNKNOWN_LAST_MODIFIED_NANOS;
+                    writer.write(String.join(FIELD_SEPARATOR,
+                            String.valueOf(fileState.getValue().committedByteOffset()),
+                            String.valueOf(lastModifiedNanos),
+                            fileState.getKey(),
+                            String.valueOf(fileState.getValue().committedOutputOffset()),
+                            String.valueOf(fileState.getValue().outputSegment()),
+                            fileState.getValue().logFile().toString()));
+                    writer.newLine();
+                }
+                writer.flush();
+                checkpointChannel.force(false);
+            }
+            Files.move(temporaryCheckpointFile, pathToCheckpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            System.err.printf("Could not save the checkpoint file %s%n", pathToCheckpointFile);
+        }
+    }
+
+    // Every field after the file key is a number, up to the path, which is never one, since it is absolute.
+    private static int findNumberOfFields(String[] fields) {
+        for (int field = NUMBER_OF_FIELDS_WITHOUT_OUTPUT_OFFSET - 1; field < fields.length; field++) {
+            if (!NUMBER.matcher(fields[field]).matches()) {
+                return field + 1;
+            }
+        }
+        return fields.length == NUMBER_OF_FIELDS ? NUMBER_OF_FIELDS : -1;
+    }
+
+    private record LoadedFileState(String fileKey, FileState fileState) {
+    }
+
+    private record CheckpointContents(Map<String, FileState> fileStates, long forgottenLastModifiedNanos, OutputCompression outputCompression) {
+    }
+}
@@ -0,0 +1,152 @@
+package com.home.lab.logtransformer;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class FileStateIndex {
+
+    public static final long NOTHING_FORGOTTEN = Long.MIN_VALUE;
+    public static final long UNKNOWN_OUTPUT_OFFSET = -1;
+    public static final long UNKNOWN_LAST_MODIFIED_NANOS = Long.MIN_VALUE;
+    public static final long NO_OUTPUT_SEGMENT = -1;
+
+    // Rough size of an entry: the map node, the key and the state with its path, assuming compressed references.
+    private static final long ESTIMATED_ENTRY_OVERHEAD_BYTES = 32 + 48 + 40 + 64;
+
+    private final Map<String, FileState> fileStates = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long missingFileTtlMillis;
+    private final LongAdder evictedEntries = new LongAdder();
+    private volatile long forgottenLastModifiedNanos = NOTHING_FORGOTTEN;
+
+    public FileStateIndex(int maxEntries, long missingFileTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.missingFileTtlMillis = missingFileTtlMillis;
+    }
+
+    // Files are tracked by their file key (device and inode on Linux), so a renamed file keeps its progress and a
+    // new file under an old name starts from the beginning, without a separate lookup by path.
+    public FileState get(String fileKey) {
+        return fileStates.get(fileKey);
+    }
+
+    public void put(String fileKey, FileState fileState) {
+        fileStates.put(fileKey, fileState);
+    }
+
+    // Called once the output written for the file up to the given source offset was forced to disk. The output
+    // offset is only kept if the file still has the name its output was written under, since after a rename the
+    // transformed file of the new name is a different one. It is an offset into the given output segment.
+    public void commit(String fileKey, Path logFile, long committedByteOffset, long outputSegment, long committedOutputOffset) {
+        fileStates.computeIfPresent(fileKey, (ignored, fileState) -> fileState.committed(
+                committedByteOffset, outputSegment, fileState.logFile().equals(logFile) ? committedOutputOffset : UNKNOWN_OUTPUT_OFFSET));
+    }
+
+    // Only the name of the current state is changed, so progress recorded by a worker or a commit in the meantime is kept.
+    public void rename(String fileKey, Path renamedLogFile) {
+        fileStates.computeIfPresent(fileKey, (ignored, fileState) -> fileState.logFile().equals(renamedLogFile) ? fileState : fileState.renamedTo(renamedLogFile));
+    }
+
+    // Looks at every entry, so it is only used for the rare files that need it. If several files had the name, the one
+    // modified last is returned, since the others were deleted or renamed before it.
+    public Optional<Map.Entry<String, FileState>> findByLogFile(Path logFile) {
+        return fileStates.entrySet().stream()
+                .filter(fileState -> fileState.getValue().logFile().equals(logFile))
+                .max(Comparator.comparingLong(fileState -> fileState.getValue().lastModifiedNanos()));
+    }
+
+    public Set<Map.Entry<String, FileState>> entries() {
+        return fileStates.entrySet();
+    }
+
+    public int size() {
+        return fileStates.size();
+    }
+
+    public long evictedEntries() {
+        return evictedEntries.sum();
+    }
+
+    public long estimatedFootprintBytes() {
+        long footprintBytes = 0;
+        for (Map.Entry<String, FileState> fileState : fileStates.entrySet()) {
+            footprintBytes += ESTIMATED_ENTRY_OVERHEAD_BYTES + fileState.getKey().length() + fileState.getValue().logFile().toString().length();
+        }
+        return footprintBytes;
+    }
+
+    // Every file that was evicted while it still existed had not been modified after this time, so an unknown file
+    // that is not newer than it was already transformed before, and must not be transformed from the beginning again.
+    public boolean isForgotten(long lastModifiedNanos) {
+        return lastModifiedNanos <= forgottenLastModifiedNanos;
+    }
+
+    public long forgottenLastModifiedNanos() {
+        return forgottenLastModifiedNanos;
+    }
+
+    public void restore(Map<String, FileState> fileStates, long forgottenLastModifiedNanos) {
+        this.fileStates.putAll(fileStates);
+        this.forgottenLastModifiedNanos = forgottenLastModifiedNanos;
+    }
+
+    // Called after a full scan of the logs directory, with the keys of all files that were found in it. Files that
+    // haven't been seen for longer than the TTL were deleted, or moved away, and are dropped first. If the index is
+    // still above its size cap, the files that were modified longest ago are dropped as well, even if they still exist.
+    public void evict(Set<String> seenFileKeys, long scanTimeMillis) {
+        fileStates.replaceAll((fileKey, fileState) -> seenFileKeys.contains(fileKey) ? fileState.seenAt(scanTimeMillis) : fileState);
+        fileStates.entrySet().removeIf(fileState -> {
+            boolean missingForTooLong = scanTimeMillis - fileState.getValue().lastSeenMillis() > missingFileTtlMillis;
+            if (missingForTooLong) {
+                evictedEntries.increment();
+            }
+            return missingForTooLong;
+        });
+        int excessEntries = fileStates.size() - maxEntries;
+        if (excessEntries <= 0) {
+            return;
+        }
+        List<Map.Entry<String, FileState>> leastRecentlyModified = fileStates.entrySet().stream()
+                .sorted(Comparator.comparingLong(fileState -> fileState.getValue().lastModifiedNanos()))
+                .limit(excessEntries)
+                .toList();
+        for (Map.Entry<String, FileState> fileState : leastRecentlyModified) {
+            fileStates.remove(fileState.getKey());
+            forgottenLastModifiedNanos = Math.max(forgottenLastModifiedNanos, fileState.getValue().lastModifiedNanos());
+            evictedEntries.increment();
+        }
+        System.err.printf("The file state index exceeded %d entries, forgot %d log files not modified since %s%n",
+                maxEntries, excessEntries, FileTime.from(forgottenLastModifiedNanos, TimeUnit.NANOSECONDS));
+    }
+
+    // The byte offset is where the next pass continues reading. The committed byte offset trails behind it until the
+    // output of the lines in between is committed, and is the one that survives a restart, together with the output
+    // segment written to at that point and the size it had.
+    public record FileState(Path logFile, long lastModifiedNanos, long byteOffset, long committedByteOffset,
+                            long outputSegment, long committedOutputOffset, long lastSeenMillis) {
+
+        public boolean isCommitted() {
+            return byteOffset == committedByteOffset;
+        }
+
+        FileState seenAt(long timeMillis) {
+            return new FileState(logFile, lastModifiedNanos, byteOffset, committedByteOffset, outputSegment, committedOutputOffset, timeMillis);
+        }
+
+        FileState renamedTo(Path renamedLogFile) {
+            return new FileState(renamedLogFile, lastModifiedNanos, byteOffset, committedByteOffset, outputSegment, UNKNOWN_OUTPUT_OFFSET, lastSeenMillis);
+        }
+
+        FileState committed(long committedByteOffset, long outputSegment, long committedOutputOffset) {
+            return new FileState(logFile, lastModifiedNanos, byteOffset, committedByteOffset, outputSegment, committedOutputOffset, lastSeenMillis);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.home.lab.logtransformer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class GzipBlockCompressor {
+
+    // Minimal gzip member header: magic number, deflate, no flags, no modification time, no extra flags, unknown OS.
+    private static final byte[] MEMBER_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int MEMBER_TRAILER_SIZE = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc32 = new CRC32();
+    private ByteBuffer compressedBlock = allocate(64 * 1024);
+
+    // Every block is compressed into a complete gzip member. A gzip file may consist of any number of members, which
+    // are decompressed as a single stream, so each written block leaves a valid file behind that can be appended to.
+    // The returned buffer is reused by the next call.
+    public ByteBuffer compress(ByteBuffer block) {
+        int blockSize = block.remaining();
+        crc32.reset();
+        crc32.update(block.duplicate());
+        deflater.reset();
+        deflater.setInput(block);
+        deflater.finish();
+        ensureRemaining(MEMBER_HEADER.length + blockSize + (blockSize >> 8) + 64);
+        compressedBlock.clear().put(MEMBER_HEADER);
+        while (!deflater.finished()) {
+            if (!compressedBlock.hasRemaining()) {
+                ensureRemaining(compressedBlock.capacity());
+            }
+            deflater.deflate(compressedBlock);
+        }
+        ensureRemaining(MEMBER_TRAILER_SIZE);
+        compressedBlock.putInt((int) crc32.getValue()).putInt(blockSize);
+        return compressedBlock.flip();
+    }
+
+    private void ensureRemaining(int remaining) {
+        if (compressedBlock.remaining() >= remaining) {
+            return;
+        }
+        ByteBuffer grownCompressedBlock = allocate(compressedBlock.position() + remaining);
+        grownCompressedBlock.put(compressedBlock.flip());
+        compressedBlock = grownCompressedBlock;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        // The trailer of a gzip member is little endian.
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
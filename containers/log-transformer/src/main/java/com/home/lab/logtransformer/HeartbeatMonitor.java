@@ -1,26 +1,112 @@
 package com.home.lab.logtransformer;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class HeartbeatMonitor {
 
     private static final String DEFAULT_PATH_TO_HEARTBEAT_FILE = "/tmp/heartbeat";
+    // Main applications that only update the modification time of the file never increment the counter, so the
+    // counter has to be asked for.
+    private static final HeartbeatTransport DEFAULT_HEARTBEAT_TRANSPORT = HeartbeatTransport.MODIFIED_TIME;
     private static final long DEFAULT_TIME_BETWEEN_HEARTBEAT_CHECKS_MILLIS = 30000;
     private static final int FAILED_HEARTBEAT_THRESHOLD = 3;
+    // Long enough that a GC pause or CPU throttling in either container is not mistaken for a stopped application.
+    private static final long DEFAULT_HEARTBEAT_STALL_TIMEOUT_MILLIS = 5000;
+    // The logger beats every 100 milliseconds, so a shorter timeout would mistake a short pause of it for a stall.
+    private static final long MIN_HEARTBEAT_STALL_TIMEOUT_MILLIS = 200;
+    private static final int HEARTBEAT_COUNTER_CHECKS_PER_STALL_TIMEOUT = 10;
+    // The main application may start a while after this process, so its first beat gets far more time than the others.
+    private static final long FIRST_HEARTBEAT_TIMEOUT_MILLIS = 60000;
+    private static final int HEARTBEAT_COUNTER_SIZE = Long.BYTES;
+    private static final VarHandle HEARTBEAT_COUNTER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
 
+    private static final CountDownLatch mainApplicationStopped = new CountDownLatch(1);
+    private static volatile boolean heartbeatCheckFailed;
+
+    // The configuration is read before the monitor starts, so an invalid one stops the process right away. The monitor
+    // itself never exits the process - it only signals that the main application stopped, and the main thread shuts
+    // down once its current pass is done, so the output transformed so far is committed first.
     public static void startHeartbeatMonitor() {
-        Thread heartbeatMonitorThread = new Thread(HeartbeatMonitor::performHeartbeatCheck);
-        heartbeatMonitorThread.setName("Heartbeat Monitor Thread");
-        heartbeatMonitorThread.start();
+        Path heartbeatFile = findHeartbeatFile();
+        Runnable heartbeatCheck = switch (findHeartbeatTransport()) {
+            case COUNTER -> {
+                long heartbeatStallTimeoutMillis = findHeartbeatStallTimeoutMillis();
+                yield () -> performHeartbeatCounterCheck(heartbeatFile, heartbeatStallTimeoutMillis);
+            }
+            case MODIFIED_TIME -> {
+                long timeBetweenHeartbeatChecksMillis = findTimeBetweenHeartbeatChecksMillis();
+                yield () -> performHeartbeatCheck(heartbeatFile, timeBetweenHeartbeatChecksMillis);
+            }
+        };
+        Thread.ofPlatform()
+                .name("Heartbeat Monitor Thread")
+                .daemon()
+                .start(heartbeatCheck);
     }
 
-    private static void performHeartbeatCheck() {
-        Path heartbeatFile = findHeartbeatFile();
-        long timeBetweenHeartbeatChecksMillis = findTimeBetweenHeartbeatChecksMillis();
+    public static boolean isMainApplicationStopped() {
+        return mainApplicationStopped.getCount() == 0;
+    }
+
+    // Waits for at most the given time, and returns early with true if the main application stopped in the meantime.
+    public static boolean awaitMainApplicationStop(long timeoutMillis) throws InterruptedException {
+        return mainApplicationStopped.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static int exitStatus() {
+        return heartbeatCheckFailed ? 1 : 0;
+    }
+
+    // The heartbeat counter is shared with the main application by mapping the same file, so a check is a single load
+    // from memory. The main application is considered stopped once the counter hasn't changed for the stall timeout,
+    // measured with the monotonic clock of this process. A file that is still shorter than the counter belongs to a
+    // main application that hasn't started beating yet.
+    private static void performHeartbeatCounterCheck(Path heartbeatFile, long heartbeatStallTimeoutMillis) {
+        try (FileChannel heartbeatFileChannel = FileChannel.open(heartbeatFile, StandardOpenOption.READ)) {
+            MappedByteBuffer heartbeatCounter = null;
+            long previousBeat = 0;
+            boolean heartbeatSeen = false;
+            long lastChangeNanos = System.nanoTime();
+            while (true) {
+                if (heartbeatCounter == null && heartbeatFileChannel.size() >= HEARTBEAT_COUNTER_SIZE) {
+                    heartbeatCounter = heartbeatFileChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEARTBEAT_COUNTER_SIZE);
+                    previousBeat = (long) HEARTBEAT_COUNTER.getAcquire(heartbeatCounter, 0);
+                }
+                long currentNanos = System.nanoTime();
+                long beat = heartbeatCounter == null ? previousBeat : (long) HEARTBEAT_COUNTER.getAcquire(heartbeatCounter, 0);
+                if (beat != previousBeat) {
+                    previousBeat = beat;
+                    heartbeatSeen = true;
+                    lastChangeNanos = currentNanos;
+                } else {
+                    long timeoutMillis = heartbeatSeen ? heartbeatStallTimeoutMillis : FIRST_HEARTBEAT_TIMEOUT_MILLIS;
+                    if (currentNanos - lastChangeNanos >= TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                        stopMainApplication("System shutdown: The heartbeat counter hasn't changed for %d milliseconds".formatted(timeoutMillis));
+                        return;
+                    }
+                }
+                Thread.sleep(heartbeatStallTimeoutMillis / HEARTBEAT_COUNTER_CHECKS_PER_STALL_TIMEOUT);
+            }
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            heartbeatCheckFailed = true;
+            stopMainApplication("System shutdown: The heartbeat counter could not be checked");
+        }
+    }
+
+    private static void performHeartbeatCheck(Path heartbeatFile, long timeBetweenHeartbeatChecksMillis) {
         FileTime previousModifiedTime = null;
         int failedHeartbeatChecks = 0;
         while (true) {
@@ -34,8 +120,8 @@ public class HeartbeatMonitor {
                         failedHeartbeatChecks = 0;
                     } else {
                         if (failedHeartbeatChecks >= FAILED_HEARTBEAT_THRESHOLD) {
-                            System.err.println("System shutdown: Reached the threshold for heartbeat retries");
-                            System.exit(0);
+                            stopMainApplication("System shutdown: Reached the threshold for heartbeat retries");
+                            return;
                         }
                         failedHeartbeatChecks++;
                     }
@@ -43,11 +129,18 @@ public class HeartbeatMonitor {
                 Thread.sleep(timeBetweenHeartbeatChecksMillis);
             } catch (Exception exception) {
                 exception.printStackTrace();
-                System.exit(1);
+                heartbeatCheckFailed = true;
+                stopMainApplication("System shutdown: The heartbeat file could not be checked");
+                return;
             }
         }
     }
 
+    private static void stopMainApplication(String reason) {
+        System.err.println(reason);
+        mainApplicationStopped.countDown();
+    }
+
     private static Path findHeartbeatFile() {
         try {
             Path heartbeatFile = Optional.ofNullable(System.getenv("PATH_TO_HEARTBEAT_FILE")).map(Path::of)
@@ -62,6 +155,31 @@ public class HeartbeatMonitor {
         }
     }
 
+    private static HeartbeatTransport findHeartbeatTransport() {
+        try {
+            return Optional.ofNullable(System.getenv("HEARTBEAT_TRANSPORT")).map(String::toUpperCase).map(HeartbeatTransport::valueOf)
+                    .orElse(DEFAULT_HEARTBEAT_TRANSPORT);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: HEARTBEAT_TRANSPORT must be either 'counter' or 'modified_time'");
+        }
+    }
+
+    private static long findHeartbeatStallTimeoutMillis() {
+        try {
+            long heartbeatStallTimeoutMillis = Optional.ofNullable(System.getenv("HEARTBEAT_STALL_TIMEOUT_MILLIS")).map(Long::parseLong)
+                    .orElse(DEFAULT_HEARTBEAT_STALL_TIMEOUT_MILLIS);
+            if (heartbeatStallTimeoutMillis < MIN_HEARTBEAT_STALL_TIMEOUT_MILLIS) {
+                throw new IllegalStateException("Invalid configuration state: HEARTBEAT_STALL_TIMEOUT_MILLIS cannot be lower than %d"
+                        .formatted(MIN_HEARTBEAT_STALL_TIMEOUT_MILLIS));
+            }
+            return heartbeatStallTimeoutMillis;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
     private static long findTimeBetweenHeartbeatChecksMillis() {
         try {
             long timeBetweenHeartbeatChecksMillis = Optional.ofNullable(System.getenv("TIME_BETWEEN_HEARTBEAT_CHECKS_MILLIS")).map(Long::parseLong)
@@ -79,4 +197,9 @@ public class HeartbeatMonitor {
     private static boolean isHeartbeatFileUpdated(FileTime previousModifiedTime, FileTime currentModifiedTime) {
         return previousModifiedTime.compareTo(currentModifiedTime) < 0;
     }
+
+    enum HeartbeatTransport {
+        COUNTER,
+        MODIFIED_TIME
+    }
 }
@@ -0,0 +1,74 @@
+package com.home.lab.logtransformer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    // Every power of two is split into this many buckets, so a recorded value is off by at most 1/8 (12.5%).
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    // Buckets are laid out like in HdrHistogram, with a fixed relative precision over the whole range of values,
+    // so recording is a few bit operations and atomic increments, without any allocation or locking.
+    public void record(long valueNanos) {
+        long value = Math.max(valueNanos, 0);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    // Returns the upper bound of the bucket in which the quantile falls, or 0 if nothing was recorded yet.
+    // Values recorded while the buckets are being read may or may not be taken into account.
+    public long valueAtQuantileNanos(double quantile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            snapshot[index] = buckets.get(index);
+            total += snapshot[index];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(quantile * total), 1);
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += snapshot[index];
+            if (seen >= rank) {
+                return bucketUpperBound(index);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    private static int bucketIndex(long value) {
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        if (highestBit < SUB_BUCKET_BITS) {
+            return (int) value;
+        }
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
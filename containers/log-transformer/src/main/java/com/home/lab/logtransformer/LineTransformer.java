@@ -0,0 +1,11 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface LineTransformer {
+
+    // Writes the transformed form of the bytes between lineStart (inclusive) and lineEnd (exclusive) to the writer,
+    // without the line separator. Returns false if the line was filtered out and nothing was written.
+    boolean transform(ByteBuffer source, int lineStart, int lineEnd, TransformedLogWriter writer) throws IOException;
+}
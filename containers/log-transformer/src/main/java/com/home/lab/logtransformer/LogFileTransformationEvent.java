@@ -0,0 +1,20 @@
+package com.home.lab.logtransformer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.home.lab.logtransformer.LogFileTransformation")
+@Label("Log File Transformation")
+@Category("Log Transformer")
+public class LogFileTransformationEvent extends Event {
+
+    @Label("Log File")
+    String logFile;
+
+    @Label("Transformed Bytes")
+    @DataAmount
+    long transformedBytes;
+}
@@ -0,0 +1,228 @@
+package com.home.lab.logtransformer;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class LogFileTransformer {
+
+    public static final long NO_MEMORY_MAPPING = 0;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPED_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final long MAX_MAPPED_WINDOW_SIZE = Integer.MAX_VALUE;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    // Each transformation worker reuses its own direct buffer for every file it reads.
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+    private static final ThreadLocal<ByteBuffer> RENDERED_RECORD_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_BUFFER_SIZE));
+
+    private final LineTransformer lineTransformer;
+    private final long memoryMappedReadThresholdBytes;
+
+    public LogFileTransformer(LineTransformer lineTransformer) {
+        this(lineTransformer, NO_MEMORY_MAPPING);
+    }
+
+    public LogFileTransformer(LineTransformer lineTransformer, long memoryMappedReadThresholdBytes) {
+        this.lineTransformer = lineTransformer;
+        this.memoryMappedReadThresholdBytes = memoryMappedReadThresholdBytes;
+    }
+
+    // Only complete lines are transformed. A trailing line without a line terminator may still be written by the
+    // producer, so the returned offset stops right before it and a later pass picks it up once it is finished.
+    public long transform(FileChannel logFileChannel, long byteOffset, TransformedLogWriter writer) throws IOException {
+        long fileSize = logFileChannel.size();
+        if (memoryMappedReadThresholdBytes != NO_MEMORY_MAPPING && fileSize - byteOffset >= memoryMappedReadThresholdBytes) {
+            return transformMapped(logFileChannel, byteOffset, fileSize, writer);
+        }
+        return transformBuffered(logFileChannel, byteOffset, writer);
+    }
+
+    // Gzip archives are decompressed on the fly. They are only picked up once they are complete, so every line is
+    // transformed, including a last one without a line terminator, and the returned offset is the end of the file.
+    // An archive made of several gzip members can still grow, in which case the next pass resumes after the last member.
+    public long transformGzip(FileChannel logFileChannel, long byteOffset, TransformedLogWriter writer) throws IOException {
+        return transformGzip(logFileChannel, byteOffset, 0, writer);
+    }
+
+    // The given number of decompressed bytes is skipped first, since they were already transformed from the log file the
+    // archive was compressed from. An archive that is shorter than that holds nothing left to transform.
+    public long transformGzip(FileChannel logFileChannel, long byteOffset, long decompressedBytesToSkip, TransformedLogWriter writer) throws IOException {
+        long fileSize = logFileChannel.size();
+        if (byteOffset >= fileSize) {
+            return byteOffset;
+        }
+        logFileChannel.position(byteOffset);
+        // The stream is closed to release its native inflater right away, but the channel belongs to the caller.
+        InputStream compressedLogFile = new FilterInputStream(Channels.newInputStream(logFileChannel)) {
+            @Override
+            public void close() {
+            }
+        };
+        try (InputStream decompressedLogFile = new GZIPInputStream(compressedLogFile, READ_BUFFER_SIZE)) {
+            long skippedBytes = 0;
+            while (skippedBytes < decompressedBytesToSkip) {
+                long skipped = decompressedLogFile.skip(decompressedBytesToSkip - skippedBytes);
+                if (skipped == 0) {
+                    return fileSize;
+                }
+                skippedBytes += skipped;
+            }
+            transformLines(Channels.newChannel(decompressedLogFile), writer, true);
+            return fileSize;
+        } catch (EOFException exception) {
+            throw new IOException("The compressed log file is incomplete", exception);
+        }
+    }
+
+    // Binary log files are read record by record. The length in front of every record says where the next one starts,
+    // so no byte of the payload has to be searched for a line terminator. A trailing record that is not complete yet is
+    // left for a later pass, just like an unfinished line of a text log file.
+    public long transformBinary(FileChannel logFileChannel, long byteOffset, TransformedLogWriter writer) throws IOException {
+        long processedByteOffset = Math.max(byteOffset, BinaryLogFormat.FILE_HEADER.length);
+        logFileChannel.position(processedByteOffset);
+        ByteBuffer readBuffer = READ_BUFFER.get().clear();
+        long transformedLines = 0;
+        while (logFileChannel.read(readBuffer) != -1) {
+            readBuffer.flip();
+            int recordStart = 0;
+            while (readBuffer.limit() - recordStart >= BinaryLogFormat.RECORD_HEADER_SIZE) {
+                int payloadLength = BinaryLogFormat.payloadLength(readBuffer, recordStart, processedByteOffset + recordStart);
+                int recordEnd = recordStart + BinaryLogFormat.RECORD_HEADER_SIZE + payloadLength;
+                if (recordEnd > readBuffer.limit()) {
+                    break;
+                }
+                transformLogRecord(readBuffer, recordStart, payloadLength, writer);
+                transformedLines++;
+                recordStart = recordEnd;
+            }
+            processedByteOffset += recordStart;
+            readBuffer.position(recordStart).compact();
+            if (!readBuffer.hasRemaining()) {
+                readBuffer = growReadBuffer(readBuffer);
+            }
+        }
+        TransformationMetrics.recordTransformedLines(transformedLines);
+        return processedByteOffset;
+    }
+
+    private long transformBuffered(FileChannel logFileChannel, long byteOffset, TransformedLogWriter writer) throws IOException {
+        logFileChannel.position(byteOffset);
+        return byteOffset + transformLines(logFileChannel, writer, false);
+    }
+
+    // Returns the number of bytes read from the source that belonged to a transformed line.
+    private long transformLines(ReadableByteChannel source, TransformedLogWriter writer, boolean transformUnterminatedLine) throws IOException {
+        ByteBuffer readBuffer = READ_BUFFER.get().clear();
+        long processedBytes = 0;
+        long transformedLines = 0;
+        int scannedBytes = 0;
+        while (source.read(readBuffer) != -1) {
+            readBuffer.flip();
+            int lineStart = 0;
+            for (int index = scannedBytes; index < readBuffer.limit(); index++) {
+                if (readBuffer.get(index) == '\n') {
+                    transformLogLine(readBuffer, lineStart, index, writer);
+                    transformedLines++;
+                    processedBytes += index + 1 - lineStart;
+                    lineStart = index + 1;
+                }
+            }
+            // The unfinished line is moved to the start of the buffer, so it is completed by the next read
+            // and only the newly read bytes have to be searched for a line terminator.
+            readBuffer.position(lineStart).compact();
+            scannedBytes = readBuffer.position();
+            if (!readBuffer.hasRemaining()) {
+                readBuffer = growReadBuffer(readBuffer);
+            }
+        }
+        if (transformUnterminatedLine && readBuffer.position() > 0) {
+            transformLogLine(readBuffer, 0, readBuffer.position(), writer);
+            transformedLines++;
+            processedBytes += readBuffer.position();
+        }
+        TransformationMetrics.recordTransformedLines(transformedLines);
+        return processedBytes;
+    }
+
+    // Large backlogs are mapped into memory in windows, so the lines are found and handed to the line transformer
+    // directly in the page cache, without copying them into a read buffer first. Only the bytes present when the pass
+    // started are read, anything appended later is left for the next pass. Every window starts at the first line
+    // that was not finished in the previous one, and if a single line doesn't fit into a window, the window grows.
+    private long transformMapped(FileChannel logFileChannel, long byteOffset, long fileSize, TransformedLogWriter writer) throws IOException {
+        long processedByteOffset = byteOffset;
+        long windowSize = MAPPED_WINDOW_SIZE;
+        long transformedLines = 0;
+        int scannedBytes = 0;
+        while (processedByteOffset < fileSize) {
+            int mappedBytes = (int) Math.min(windowSize, fileSize - processedByteOffset);
+            boolean restOfFileMapped = processedByteOffset + mappedBytes == fileSize;
+            MappedByteBuffer window = logFileChannel.map(FileChannel.MapMode.READ_ONLY, processedByteOffset, mappedBytes);
+            int lineStart = 0;
+            for (int index = scannedBytes; index < mappedBytes; index++) {
+                if (window.get(index) == '\n') {
+                    transformLogLine(window, lineStart, index, writer);
+                    transformedLines++;
+                    lineStart = index + 1;
+                }
+            }
+            processedByteOffset += lineStart;
+            if (restOfFileMapped) {
+                // The whole rest of the file was mapped, so whatever follows the last line terminator is unfinished.
+                break;
+            }
+            if (lineStart == 0) {
+                if (windowSize == MAX_MAPPED_WINDOW_SIZE) {
+                    throw new IOException("A line in the log file is longer than %d bytes".formatted(MAX_MAPPED_WINDOW_SIZE));
+                }
+                windowSize = Math.min(windowSize * 2, MAX_MAPPED_WINDOW_SIZE);
+                scannedBytes = mappedBytes;
+            } else {
+                windowSize = MAPPED_WINDOW_SIZE;
+                scannedBytes = 0;
+            }
+        }
+        TransformationMetrics.recordTransformedLines(transformedLines);
+        return processedByteOffset;
+    }
+
+    private void transformLogLine(ByteBuffer readBuffer, int lineStart, int lineEnd, TransformedLogWriter writer) throws IOException {
+        if (lineEnd > lineStart && readBuffer.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        writer.startLine();
+        if (lineTransformer.transform(readBuffer, lineStart, lineEnd, writer)) {
+            writer.write(LINE_SEPARATOR);
+        }
+    }
+
+    // The record is rendered as a text line first, so the line transformer works on it like on any other line.
+    private void transformLogRecord(ByteBuffer readBuffer, int recordStart, int payloadLength, TransformedLogWriter writer) throws IOException {
+        ByteBuffer renderedRecord = RENDERED_RECORD_BUFFER.get().clear();
+        if (renderedRecord.capacity() < BinaryLogFormat.MAX_RENDERED_PREFIX_LENGTH + payloadLength) {
+            renderedRecord = ByteBuffer.allocate(BinaryLogFormat.MAX_RENDERED_PREFIX_LENGTH + payloadLength);
+            RENDERED_RECORD_BUFFER.set(renderedRecord);
+        }
+        BinaryLogFormat.render(readBuffer, recordStart, payloadLength, renderedRecord);
+        writer.startLine();
+        if (lineTransformer.transform(renderedRecord, 0, renderedRecord.position(), writer)) {
+            writer.write(LINE_SEPARATOR);
+        }
+    }
+
+    private static ByteBuffer growReadBuffer(ByteBuffer readBuffer) {
+        ByteBuffer grownReadBuffer = ByteBuffer.allocateDirect(readBuffer.capacity() * 2);
+        grownReadBuffer.put(readBuffer.flip());
+        READ_BUFFER.set(grownReadBuffer);
+        return grownReadBuffer;
+    }
+}
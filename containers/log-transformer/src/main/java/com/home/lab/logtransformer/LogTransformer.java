@@ -1,55 +1,324 @@
 package com.home.lab.logtransformer;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import com.home.lab.logtransformer.FileStateIndex.FileState;
+
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class LogTransformer {
 
     private static final String DEFAULT_PATH_TO_LOGS_DIRECTORY = "/tmp/logs";
+    private static final String LOGS_DIRECTORY_SEPARATOR = ",";
+    private static final String DEFAULT_LOG_FILE_NAME_GLOB = "*";
+    private static final int DEFAULT_SHARD_COUNT = 1;
     private static final String DEFAULT_PATH_TO_TRANSFORMED_LOGS_DIRECTORY = "/tmp/transformed";
     private static final long DEFAULT_TIME_BETWEEN_LOGS_DIRECTORY_SCANS_MILLIS = 10000;
+    private static final long DEFAULT_TIME_BETWEEN_RECONCILIATION_SCANS_MILLIS = 60000;
+    private static final ScanMode DEFAULT_LOGS_DIRECTORY_SCAN_MODE = ScanMode.POLL;
+    // A dotfile, like its temporary and shard siblings, so consumers of the transformed logs directory can skip them.
+    private static final String DEFAULT_CHECKPOINT_FILE_NAME = ".checkpoint";
+
+    private static final int DEFAULT_TRANSFORMATION_PARALLELISM = 1;
+    private static final long DEFAULT_MEMORY_MAPPED_READ_THRESHOLD_BYTES = 64 * 1024 * 1024;
+    private static final int METRICS_DISABLED = 0;
+    // The transformer runs as a sidecar, so it doesn't open a port unless the deployment asks for one.
+    private static final int DEFAULT_METRICS_PORT = METRICS_DISABLED;
+    private static final int DEFAULT_FILE_STATE_INDEX_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_MISSING_FILE_TTL_MILLIS = 3600000;
+    private static final OutputCompression DEFAULT_OUTPUT_COMPRESSION = OutputCompression.NONE;
+    private static final String GZIP_FILE_EXTENSION = ".gz";
+    private static final long COMPRESSED_LOG_FILE_SETTLE_TIME_MILLIS = 5000;
+    private static final long DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS = 1000;
+    private static final long DEFAULT_GROUP_COMMIT_BYTES = 1024 * 1024;
+    // Exactly-once delivery truncates the transformed files on startup, which other consumers may be reading.
+    private static final DeliveryGuarantee DEFAULT_DELIVERY_GUARANTEE = DeliveryGuarantee.AT_LEAST_ONCE;
+    // The transformed logs directory is read by other consumers, so index files only appear in it when asked for.
+    private static final long DEFAULT_INDEX_INTERVAL_BYTES = TransformedLogIndex.NO_INDEX;
+    private static final long NO_OUTPUT_SEGMENTS = 0;
+    private static final DateTimeFormatter OUTPUT_SEGMENT_FORMATTER = DateTimeFormatter.ofPattern("uuuuMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
 
-    private static final Map<Path, FileMetadata> processedFiles = new HashMap<>();
+    private static FileStateIndex fileStateIndex;
+    private static ExecutorService transformationExecutor;
+    private static ExecutorService compressionExecutor;
+    private static OutputCompression outputCompression;
+    private static TransformedLogOutput transformedLogOutput;
+    private static DeliveryGuarantee deliveryGuarantee;
+    private static LogFileTransformer logFileTransformer;
+    private static PathMatcher logFileNameMatcher;
+    private static ShardAssignment shardAssignment;
+    private static boolean transformedLogsDirectoryPerLogsDirectory;
+    private static long outputSegmentDurationMillis;
+    // Only used by the main thread, which dispatches the files to the workers.
+    private static final Map<String, Future<?>> transformationsInFlight = new HashMap<>();
+    private static final Set<Path> deferredLogFiles = new LinkedHashSet<>();
 
     public static void main(String[] args) {
         try {
             HeartbeatMonitor.startHeartbeatMonitor();
-            Path pathToLogsDirectory = findPathToLogsDirectory();
-            long pauseDurationMillis = findPauseDurationBetweenTransformations();
-            while (true) {
-                List<Path> logFilesForProcessing = scanLogFilesForTransformation(pathToLogsDirectory);
-                processLogFiles(logFilesForProcessing);
-                Thread.sleep(pauseDurationMillis);
+            List<Path> pathsToLogsDirectories = findPathsToLogsDirectories();
+            logFileNameMatcher = findLogFileNameMatcher();
+            shardAssignment = findShardAssignment();
+            outputCompression = findOutputCompression();
+            outputSegmentDurationMillis = findOutputSegmentDuration();
+            createTransformedLogsDirectories(pathsToLogsDirectories);
+            Path pathToConfiguredCheckpointFile = findPathToCheckpointFile();
+            Path pathToCheckpointFile = shardAssignment.checkpointFileOf(pathToConfiguredCheckpointFile);
+            fileStateIndex = new FileStateIndex(findFileStateIndexMaxEntries(), findMissingFileTtl());
+            Optional<OutputCompression> checkpointOutputCompression = Checkpoint.load(pathToConfiguredCheckpointFile, shardAssignment, fileStateIndex);
+            deliveryGuarantee = findDeliveryGuarantee();
+            if (deliveryGuarantee == DeliveryGuarantee.EXACTLY_ONCE) {
+                checkpointOutputCompression.ifPresent(LogTransformer::truncateUncommittedOutput);
             }
+            startMetricsServer(findMetricsPort());
+            int transformationParallelism = findTransformationParallelism();
+            transformationExecutor = createTransformationExecutor(transformationParallelism);
+            compressionExecutor = createCompressionExecutor(transformationParallelism);
+            transformedLogOutput = new TransformedLogOutput(fileStateIndex, compressionExecutor, findGroupCommitInterval(), findGroupCommitBytes(),
+                    findIndexIntervalBytes());
+            logFileTransformer = new LogFileTransformer(findLineTransformer(), findMemoryMappedReadThreshold());
+            switch (findLogsDirectoryScanMode()) {
+                case POLL -> pollLogsDirectories(pathsToLogsDirectories, pathToCheckpointFile);
+                case WATCH -> watchLogsDirectories(pathsToLogsDirectories, pathToCheckpointFile);
+            }
+            shutDown(pathsToLogsDirectories, pathToCheckpointFile);
+            System.exit(HeartbeatMonitor.exitStatus());
         } catch (Exception e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
     }
 
-    private static Path findPathToLogsDirectory() {
+    private static void pollLogsDirectories(List<Path> pathsToLogsDirectories, Path pathToCheckpointFile) throws InterruptedException {
+        long pauseDurationMillis = findPauseDurationBetweenTransformations();
+        do {
+            transformLogFiles(scanLogFilesForTransformation(pathsToLogsDirectories), pathToCheckpointFile);
+        } while (!HeartbeatMonitor.awaitMainApplicationStop(pauseDurationMillis));
+    }
+
+    // Reacts to create and modify events as soon as they arrive. Events can still be lost, either when the
+    // watch service overflows or for changes it cannot observe (e.g. some network volumes), so a full scan
+    // of the directory is still performed right away on overflow and otherwise at a low, fixed frequency.
+    private static void watchLogsDirectories(List<Path> pathsToLogsDirectories, Path pathToCheckpointFile) throws IOException, InterruptedException {
+        long timeBetweenReconciliationScansMillis = findTimeBetweenReconciliationScans();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (Path pathToLogsDirectory : pathsToLogsDirectories) {
+                pathToLogsDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            long nextReconciliationScanMillis = 0;
+            while (!HeartbeatMonitor.isMainApplicationStopped()) {
+                // Wakes up for the group commit as well, so output doesn't stay uncommitted until the next event.
+                long timeUntilReconciliationScanMillis = nextReconciliationScanMillis - System.currentTimeMillis();
+                long timeoutMillis = Math.min(Math.max(timeUntilReconciliationScanMillis, 0), transformedLogOutput.groupCommitIntervalMillis());
+                WatchKey watchKey = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                Set<Path> changedLogFiles = new LinkedHashSet<>();
+                boolean eventsOverflowed = false;
+                // Drain every key that is already queued, so a burst of events results in a single pass per file.
+                while (watchKey != null) {
+                    for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+                        if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            eventsOverflowed = true;
+                        } else {
+                            changedLogFiles.add(((Path) watchKey.watchable()).resolve((Path) watchEvent.context()));
+                        }
+                    }
+                    if (!watchKey.reset()) {
+                        throw new IllegalStateException("The logs directory %s can no longer be watched".formatted(watchKey.watchable()));
+                    }
+                    watchKey = watchService.poll();
+                }
+                if (eventsOverflowed || System.currentTimeMillis() >= nextReconciliationScanMillis) {
+                    transformLogFiles(scanLogFilesForTransformation(pathsToLogsDirectories), pathToCheckpointFile);
+                    nextReconciliationScanMillis = System.currentTimeMillis() + timeBetweenReconciliationScansMillis;
+                } else {
+                    transformLogFiles(changedLogFiles.stream()
+                            .filter(logFile -> logFileNameMatcher.matches(logFile.getFileName()))
+                            .filter(Files::isRegularFile)
+                            .toList(), pathToCheckpointFile);
+                }
+            }
+        }
+    }
+
+    // Once the main application stopped, the lines it wrote since the last pass are transformed in a final one, and
+    // all remaining output is committed, so a restart in the same Pod has nothing left to transform again.
+    private static void shutDown(List<Path> pathsToLogsDirectories, Path pathToCheckpointFile) throws IOException {
+        awaitTransformations();
+        transformLogFiles(scanLogFilesForTransformation(pathsToLogsDirectories), pathToCheckpointFile);
+        awaitTransformations();
+        transformedLogOutput.close();
+        Checkpoint.save(pathToCheckpointFile, fileStateIndex, outputCompression);
+    }
+
+    // The checkpoint is only saved after a group commit, since it only ever contains committed progress.
+    private static void transformLogFiles(List<Path> logFilesForProcessing, Path pathToCheckpointFile) {
+        processLogFiles(logFilesForProcessing, pathToCheckpointFile);
+        try {
+            if (transformedLogOutput.commitDue()) {
+                Checkpoint.save(pathToCheckpointFile, fileStateIndex, outputCompression);
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+    }
+
+    // Output written after the last commit belongs to lines that are transformed again from the committed offset,
+    // so it is cut off to avoid duplicates, together with the index entries pointing into it. This is only safe if the
+    // transformed files are the same ones the checkpoint was written for, which is not the case if the output
+    // compression changed in the meantime. Several log files can have written to the same transformed file over time,
+    // and only the output after the latest commit to it is uncommitted, so it is cut at the largest committed offset.
+    private static void truncateUncommittedOutput(OutputCompression checkpointOutputCompression) {
+        if (checkpointOutputCompression != outputCompression) {
+            System.err.println("The output compression changed since the last checkpoint, uncommitted output is kept");
+            return;
+        }
+        Map<Path, Long> committedOutputOffsets = new HashMap<>();
+        for (Map.Entry<String, FileState> fileState : fileStateIndex.entries()) {
+            if (fileState.getValue().committedOutputOffset() != FileStateIndex.UNKNOWN_OUTPUT_OFFSET) {
+                committedOutputOffsets.merge(findPathToTransformedLogFile(fileState.getValue().logFile(), fileState.getValue().outputSegment()),
+                        fileState.getValue().committedOutputOffset(), Math::max);
+            }
+        }
+        for (Map.Entry<Path, Long> committedOutput : committedOutputOffsets.entrySet()) {
+            Path transformedLogFile = committedOutput.getKey();
+            long committedOutputOffset = committedOutput.getValue();
+            try (FileChannel transformedLogFileChannel = FileChannel.open(transformedLogFile, StandardOpenOption.WRITE)) {
+                if (transformedLogFileChannel.size() > committedOutputOffset) {
+                    System.err.printf("Cutting off the uncommitted output of %s after %d bytes%n", transformedLogFile, committedOutputOffset);
+                    transformedLogFileChannel.truncate(committedOutputOffset);
+                    transformedLogFileChannel.force(false);
+                }
+                TransformedLogIndex.truncate(TransformedLogIndex.indexFileOf(transformedLogFile), committedOutputOffset);
+            } catch (NoSuchFileException exception) {
+                // Nothing was written to the file after the commit, not even the file itself.
+            } catch (IOException exception) {
+                exception.printStackTrace();
+                throw new IllegalStateException("Could not cut off the uncommitted output of %s".formatted(transformedLogFile));
+            }
+        }
+    }
+
+    private static void startMetricsServer(int metricsPort) throws IOException {
+        if (metricsPort != METRICS_DISABLED) {
+            MetricsServer.startMetricsServer(metricsPort, fileStateIndex);
+        }
+    }
+
+    private static int findMetricsPort() {
+        try {
+            int metricsPort = Optional.ofNullable(System.getenv("METRICS_PORT")).map(Integer::parseInt)
+                    .orElse(DEFAULT_METRICS_PORT);
+            if (metricsPort < 0 || metricsPort > 65535) {
+                throw new IllegalStateException("Invalid configuration state: METRICS_PORT must be a valid port number or zero");
+            }
+            return metricsPort;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static int findFileStateIndexMaxEntries() {
         try {
-            Optional<String> overwrittenPathToLogsDirectory = Optional.ofNullable(System.getenv("PATH_TO_LOGS_DIRECTORY"));
-            Path pathToLogsDirectory = overwrittenPathToLogsDirectory.map(Path::of).orElseGet(() -> Path.of(DEFAULT_PATH_TO_LOGS_DIRECTORY));
-            if (!Files.isDirectory(pathToLogsDirectory)) {
+            int fileStateIndexMaxEntries = Optional.ofNullable(System.getenv("FILE_STATE_INDEX_MAX_ENTRIES")).map(Integer::parseInt)
+                    .orElse(DEFAULT_FILE_STATE_INDEX_MAX_ENTRIES);
+            if (fileStateIndexMaxEntries <= 0) {
+                throw new IllegalStateException("Invalid configuration state: FILE_STATE_INDEX_MAX_ENTRIES cannot be a negative number or zero");
+            }
+            return fileStateIndexMaxEntries;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static long findMissingFileTtl() {
+        try {
+            long missingFileTtlMillis = Optional.ofNullable(System.getenv("MISSING_FILE_TTL_MILLIS")).map(Long::parseLong)
+                    .orElse(DEFAULT_MISSING_FILE_TTL_MILLIS);
+            if (missingFileTtlMillis < 0) {
+                throw new IllegalStateException("Invalid configuration state: MISSING_FILE_TTL_MILLIS cannot be a negative number");
+            }
+            return missingFileTtlMillis;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static List<Path> findPathsToLogsDirectories() {
+        try {
+            String pathsToLogsDirectories = Optional.ofNullable(System.getenv("PATH_TO_LOGS_DIRECTORY")).orElse(DEFAULT_PATH_TO_LOGS_DIRECTORY);
+            List<Path> logsDirectories = Arrays.stream(pathsToLogsDirectories.split(LOGS_DIRECTORY_SEPARATOR))
+                    .map(String::trim)
+                    .filter(pathToLogsDirectory -> !pathToLogsDirectory.isEmpty())
+                    .map(Path::of)
+                    .distinct()
+                    .toList();
+            if (logsDirectories.isEmpty() || !logsDirectories.stream().allMatch(Files::isDirectory)) {
                 throw new IllegalStateException("Invalid configuration state: PATH_TO_LOGS_DIRECTORY doesn't point to a directory");
             }
-            return pathToLogsDirectory;
+            return logsDirectories;
         } catch (Exception exception) {
             exception.printStackTrace();
             throw new IllegalStateException("Invalid configuration state: PATH_TO_LOGS_DIRECTORY is not configured properly");
         }
     }
 
+    private static PathMatcher findLogFileNameMatcher() {
+        try {
+            String logFileNameGlob = Optional.ofNullable(System.getenv("LOG_FILE_NAME_GLOB")).orElse(DEFAULT_LOG_FILE_NAME_GLOB);
+            return FileSystems.getDefault().getPathMatcher("glob:" + logFileNameGlob);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: LOG_FILE_NAME_GLOB is not a valid glob pattern");
+        }
+    }
+
+    // In a StatefulSet, the shard index defaults to the ordinal at the end of the Pod name, which is also its hostname.
+    private static ShardAssignment findShardAssignment() {
+        try {
+            int shardCount = Optional.ofNullable(System.getenv("SHARD_COUNT")).map(Integer::parseInt).orElse(DEFAULT_SHARD_COUNT);
+            if (shardCount <= 0) {
+                throw new IllegalStateException("Invalid configuration state: SHARD_COUNT cannot be a negative number or zero");
+            }
+            if (shardCount == 1) {
+                return ShardAssignment.SINGLE_SHARD;
+            }
+            int shardIndex = Optional.ofNullable(System.getenv("SHARD_INDEX"))
+                    .or(() -> Optional.ofNullable(System.getenv("HOSTNAME")).map(hostname -> hostname.substring(hostname.lastIndexOf('-') + 1)))
+                    .map(Integer::parseInt)
+                    .orElseThrow(() -> new IllegalStateException("Invalid configuration state: SHARD_INDEX is required if SHARD_COUNT is above 1"));
+            if (shardIndex < 0 || shardIndex >= shardCount) {
+                throw new IllegalStateException("Invalid configuration state: SHARD_INDEX must be between 0 and SHARD_COUNT - 1");
+            }
+            System.err.printf("Transforming the log files of shard %d out of %d%n", shardIndex, shardCount);
+            return new ShardAssignment(shardIndex, shardCount);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    // Log files with the same name can exist in several logs directories, so each of them gets its own directory for
+    // its transformed files, named after its path. With a single logs directory, the transformed files stay flat.
+    private static void createTransformedLogsDirectories(List<Path> pathsToLogsDirectories) throws IOException {
+        transformedLogsDirectoryPerLogsDirectory = pathsToLogsDirectories.size() > 1;
+        if (transformedLogsDirectoryPerLogsDirectory) {
+            for (Path pathToLogsDirectory : pathsToLogsDirectories) {
+                Files.createDirectories(findPathToTransformedLogsDirectory(pathToLogsDirectory));
+            }
+        }
+    }
+
     private static long findPauseDurationBetweenTransformations() {
         try {
             long timeBetweenHeartbeatChecksMillis = Optional.ofNullable(System.getenv("TIME_BETWEEN_LOGS_DIRECTORY_SCANS_MILLIS")).map(Long::parseLong)
@@ -64,80 +333,560 @@ public class LogTransformer {
         }
     }
 
-    private static List<Path> scanLogFilesForTransformation(Path pathToLogsDirectory) {
-        try (DirectoryStream<Path> logsDirectoryStream = Files.newDirectoryStream(pathToLogsDirectory)) {
-            List<Path> logFilesForProcessing = new ArrayList<>();
-            for (Path logFile : logsDirectoryStream) {
-                if (processedFiles.containsKey(logFile)) {
-                    FileMetadata previouslyProcessedLogFileMetadata = processedFiles.get(logFile);
+    private static ExecutorService createTransformationExecutor(int transformationParallelism) {
+        ThreadFactory transformationThreadFactory = Thread.ofPlatform()
+                .name("Transformation Worker Thread-", 0)
+                .daemon()
+                .factory();
+        return Executors.newFixedThreadPool(transformationParallelism, transformationThreadFactory);
+    }
+
+    // Every transformation worker has at most one block being compressed at a time, so one compression worker
+    // per transformation worker is enough to never make a transformation wait for another file's compression.
+    private static ExecutorService createCompressionExecutor(int transformationParallelism) {
+        ThreadFactory compressionThreadFactory = Thread.ofPlatform()
+                .name("Compression Worker Thread-", 0)
+                .daemon()
+                .factory();
+        return Executors.newFixedThreadPool(transformationParallelism, compressionThreadFactory);
+    }
+
+    private static long findGroupCommitInterval() {
+        try {
+            long groupCommitIntervalMillis = Optional.ofNullable(System.getenv("GROUP_COMMIT_INTERVAL_MILLIS")).map(Long::parseLong)
+                    .orElse(DEFAULT_GROUP_COMMIT_INTERVAL_MILLIS);
+            if (groupCommitIntervalMillis <= 0) {
+                throw new IllegalStateException("Invalid configuration state: GROUP_COMMIT_INTERVAL_MILLIS cannot be a negative number or zero");
+            }
+            return groupCommitIntervalMillis;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static long findGroupCommitBytes() {
+        try {
+            long groupCommitBytes = Optional.ofNullable(System.getenv("GROUP_COMMIT_BYTES")).map(Long::parseLong)
+                    .orElse(DEFAULT_GROUP_COMMIT_BYTES);
+            if (groupCommitBytes <= 0) {
+                throw new IllegalStateException("Invalid configuration state: GROUP_COMMIT_BYTES cannot be a negative number or zero");
+            }
+            return groupCommitBytes;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static long findIndexIntervalBytes() {
+        try {
+            long indexIntervalBytes = Optional.ofNullable(System.getenv("INDEX_INTERVAL_BYTES")).map(Long::parseLong)
+                    .orElse(DEFAULT_INDEX_INTERVAL_BYTES);
+            if (indexIntervalBytes < 0) {
+                throw new IllegalStateException("Invalid configuration state: INDEX_INTERVAL_BYTES cannot be a negative number");
+            }
+            return indexIntervalBytes;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static long findOutputSegmentDuration() {
+        try {
+            long outputSegmentDurationMillis = Optional.ofNullable(System.getenv("OUTPUT_SEGMENT_DURATION_MILLIS")).map(Long::parseLong)
+                    .orElse(NO_OUTPUT_SEGMENTS);
+            if (outputSegmentDurationMillis < 0) {
+                throw new IllegalStateException("Invalid configuration state: OUTPUT_SEGMENT_DURATION_MILLIS cannot be a negative number");
+            }
+            return outputSegmentDurationMillis;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static DeliveryGuarantee findDeliveryGuarantee() {
+        try {
+            return Optional.ofNullable(System.getenv("DELIVERY_GUARANTEE")).map(String::toUpperCase).map(DeliveryGuarantee::valueOf)
+                    .orElse(DEFAULT_DELIVERY_GUARANTEE);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: DELIVERY_GUARANTEE must be either 'exactly_once' or 'at_least_once'");
+        }
+    }
+
+    private static OutputCompression findOutputCompression() {
+        try {
+            return Optional.ofNullable(System.getenv("OUTPUT_COMPRESSION")).map(String::toUpperCase).map(OutputCompression::valueOf)
+                    .orElse(DEFAULT_OUTPUT_COMPRESSION);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: OUTPUT_COMPRESSION must be either 'none' or 'gzip'");
+        }
+    }
+
+    private static int findTransformationParallelism() {
+        try {
+            int transformationParallelism = Optional.ofNullable(System.getenv("TRANSFORMATION_PARALLELISM")).map(Integer::parseInt)
+                    .orElse(DEFAULT_TRANSFORMATION_PARALLELISM);
+            if (transformationParallelism <= 0) {
+                throw new IllegalStateException("Invalid configuration state: TRANSFORMATION_PARALLELISM cannot be a negative number or zero");
+            }
+            return transformationParallelism;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static long findMemoryMappedReadThreshold() {
+        try {
+            long memoryMappedReadThresholdBytes = Optional.ofNullable(System.getenv("MEMORY_MAPPED_READ_THRESHOLD_BYTES")).map(Long::parseLong)
+                    .orElse(DEFAULT_MEMORY_MAPPED_READ_THRESHOLD_BYTES);
+            if (memoryMappedReadThresholdBytes < 0) {
+                throw new IllegalStateException("Invalid configuration state: MEMORY_MAPPED_READ_THRESHOLD_BYTES cannot be a negative number");
+            }
+            return memoryMappedReadThresholdBytes;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static LineTransformer findLineTransformer() {
+        List<String> ruleDefinitions = findTransformationRuleDefinitions();
+        return ruleDefinitions.isEmpty() ? new TimestampSuffixLineTransformer() : RuleChainLineTransformer.compile(ruleDefinitions);
+    }
+
+    private static List<String> findTransformationRuleDefinitions() {
+        try {
+            Optional<Path> pathToTransformationRulesFile = Optional.ofNullable(System.getenv("PATH_TO_TRANSFORMATION_RULES_FILE")).map(Path::of);
+            List<String> ruleDefinitions = pathToTransformationRulesFile.isPresent()
+                    ? Files.readAllLines(pathToTransformationRulesFile.get())
+                    : Optional.ofNullable(System.getenv("TRANSFORMATION_RULES")).map(String::lines).map(Stream::toList).orElse(List.of());
+            return ruleDefinitions.stream()
+                    .filter(ruleDefinition -> !ruleDefinition.isBlank() && !ruleDefinition.strip().startsWith("#"))
+                    .toList();
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: the transformation rules could not be read");
+        }
+    }
+
+    private static ScanMode findLogsDirectoryScanMode() {
+        try {
+            return Optional.ofNullable(System.getenv("LOGS_DIRECTORY_SCAN_MODE")).map(String::toUpperCase).map(ScanMode::valueOf)
+                    .orElse(DEFAULT_LOGS_DIRECTORY_SCAN_MODE);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: LOGS_DIRECTORY_SCAN_MODE must be either 'poll' or 'watch'");
+        }
+    }
+
+    private static long findTimeBetweenReconciliationScans() {
+        try {
+            long timeBetweenReconciliationScansMillis = Optional.ofNullable(System.getenv("TIME_BETWEEN_RECONCILIATION_SCANS_MILLIS")).map(Long::parseLong)
+                    .orElse(DEFAULT_TIME_BETWEEN_RECONCILIATION_SCANS_MILLIS);
+            if (timeBetweenReconciliationScansMillis <= 0) {
+                throw new IllegalStateException("Invalid configuration state: TIME_BETWEEN_RECONCILIATION_SCANS_MILLIS cannot be a negative number or zero");
+            }
+            return timeBetweenReconciliationScansMillis;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    private static Path findPathToCheckpointFile() {
+        try {
+            Optional<String> overwrittenPathToCheckpointFile = Optional.ofNullable(System.getenv("PATH_TO_CHECKPOINT_FILE"));
+            Path pathToCheckpointFile = overwrittenPathToCheckpointFile.map(Path::of)
+                    .orElseGet(() -> findPathToTransformedLogsDirectory().resolve(DEFAULT_CHECKPOINT_FILE_NAME));
+            if (Files.isDirectory(pathToCheckpointFile)) {
+                throw new IllegalStateException("Invalid configuration state: PATH_TO_CHECKPOINT_FILE points to a directory");
+            }
+            return pathToCheckpointFile;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            throw new IllegalStateException("Invalid configuration state: PATH_TO_CHECKPOINT_FILE is not configured properly");
+        }
+    }
+
+    private static List<Path> scanLogFilesForTransformation(List<Path> pathsToLogsDirectories) {
+        LogsDirectoryScanEvent scanEvent = new LogsDirectoryScanEvent();
+        scanEvent.begin();
+        long scanStartNanos = System.nanoTime();
+        List<Path> logFilesForProcessing = findLogFilesForTransformation(pathsToLogsDirectories);
+        TransformationMetrics.recordScanDuration(System.nanoTime() - scanStartNanos);
+        scanEvent.end();
+        // The payload is only built if the event is recorded.
+        if (scanEvent.shouldCommit()) {
+            scanEvent.logsDirectory = pathsToLogsDirectories.stream().map(Path::toString).collect(Collectors.joining(LOGS_DIRECTORY_SEPARATOR));
+            scanEvent.logFilesForTransformation = logFilesForProcessing.size();
+            scanEvent.commit();
+        }
+        return logFilesForProcessing;
+    }
+
+    // Files that don't match the glob, or that belong to another shard, are skipped before anything is tracked for
+    // them. If a logs directory could not be listed, nothing is evicted, since its files only look like they are gone.
+    private static List<Path> findLogFilesForTransformation(List<Path> pathsToLogsDirectories) {
+        List<Path> logFilesForProcessing = new ArrayList<>();
+        Set<String> seenFileKeys = new HashSet<>();
+        boolean allLogsDirectoriesListed = true;
+        long totalLagBytes = 0;
+        long maxFileLagBytes = 0;
+        for (Path pathToLogsDirectory : pathsToLogsDirectories) {
+            try (DirectoryStream<Path> logsDirectoryStream = Files.newDirectoryStream(pathToLogsDirectory)) {
+                for (Path logFile : logsDirectoryStream) {
+                    if (!logFileNameMatcher.matches(logFile.getFileName())) {
+                        continue;
+                    }
                     BasicFileAttributes logFileAttributes = Files.readAttributes(logFile, BasicFileAttributes.class);
-                    if (previouslyProcessedLogFileMetadata.lastModifiedTime.compareTo(logFileAttributes.lastModifiedTime()) < 0) {
+                    String fileKey = String.valueOf(logFileAttributes.fileKey());
+                    if (!shardAssignment.owns(fileKey)) {
+                        continue;
+                    }
+                    seenFileKeys.add(fileKey);
+                    FileState previousFileState = fileStateIndex.get(fileKey);
+                    long fileLagBytes = Math.max(logFileAttributes.size() - (previousFileState == null ? 0 : previousFileState.byteOffset()), 0);
+                    totalLagBytes += fileLagBytes;
+                    maxFileLagBytes = Math.max(maxFileLagBytes, fileLagBytes);
+                    if (previousFileState == null) {
+                        logFilesForProcessing.add(logFile);
+                        continue;
+                    }
+                    // A known file key under a new name was renamed by the producer, usually while rotating its logs.
+                    // While a worker is still transforming it under its old name, the rename is left for a later scan,
+                    // since the worker records its progress under that name.
+                    if (!previousFileState.logFile().equals(logFile)) {
+                        if (transformationsInFlight.containsKey(fileKey)) {
+                            continue;
+                        }
+                        fileStateIndex.rename(fileKey, logFile);
+                    }
+                    if (previousFileState.lastModifiedNanos() < logFileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)) {
                         logFilesForProcessing.add(logFile);
                     }
-                } else {
-                    logFilesForProcessing.add(logFile);
                 }
+            } catch (IOException ioException) {
+                ioException.printStackTrace();
+                allLogsDirectoriesListed = false;
             }
-            return logFilesForProcessing;
-        } catch (IOException ioException) {
-            ioException.printStackTrace();
-            return new ArrayList<>();
         }
+        if (allLogsDirectoriesListed) {
+            fileStateIndex.evict(seenFileKeys, System.currentTimeMillis());
+        }
+        TransformationMetrics.recordLag(totalLagBytes, maxFileLagBytes);
+        return logFilesForProcessing;
     }
 
-    private static void processLogFiles(List<Path> logFiles) {
-        for (Path logFile : logFiles) {
-            try (BufferedReader reader = Files.newBufferedReader(logFile)) {
-                long lastLineProcessed = 0;
-                if (processedFiles.containsKey(logFile)) {
-                    lastLineProcessed = processedFiles.get(logFile).lastLineProcessed;
-                    for (long lineNumber = 0; lineNumber < lastLineProcessed; lineNumber++) {
-                        if (reader.readLine() == null) {
-                            return;
-                        }
-                    }
-                }
-                long numberOfLinesProcessed = transformLogFile(logFile, reader, lastLineProcessed);
-                BasicFileAttributes logFileAttributes = Files.readAttributes(logFile, BasicFileAttributes.class);
-                FileMetadata updatedFileMetadata = new FileMetadata(logFile, logFileAttributes.lastModifiedTime(), numberOfLinesProcessed);
-                processedFiles.put(logFile, updatedFileMetadata);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    // A file is handed to at most one worker at a time, so it never has two concurrent writers and its lines keep
+    // their order, while different files are transformed in parallel. Nothing waits for the workers: a file that is
+    // still being transformed is deferred and dispatched again once its worker is done, so one large file never holds
+    // back the next pass over the others.
+    private static void processLogFiles(List<Path> logFiles, Path pathToCheckpointFile) {
+        collectFinishedTransformations();
+        Set<Path> logFilesToDispatch = new LinkedHashSet<>(deferredLogFiles);
+        logFilesToDispatch.addAll(logFiles);
+        deferredLogFiles.clear();
+        Map<Path, BasicFileAttributes> dispatchedLogFiles = new LinkedHashMap<>();
+        Set<String> dispatchedFileKeys = new HashSet<>();
+        for (Path logFile : logFilesToDispatch) {
+            BasicFileAttributes logFileAttributes;
+            try {
+                logFileAttributes = Files.readAttributes(logFile, BasicFileAttributes.class);
+            } catch (NoSuchFileException exception) {
+                continue;
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
+            }
+            String fileKey = String.valueOf(logFileAttributes.fileKey());
+            if (transformationsInFlight.containsKey(fileKey) || !dispatchedFileKeys.add(fileKey)) {
+                deferredLogFiles.add(logFile);
+                continue;
+            }
+            dispatchedLogFiles.put(logFile, logFileAttributes);
+        }
+        long outputSegment = findOutputSegment(System.currentTimeMillis());
+        if (deliveryGuarantee == DeliveryGuarantee.EXACTLY_ONCE) {
+            try {
+                registerLogFiles(dispatchedLogFiles, outputSegment, pathToCheckpointFile);
+            } catch (IOException exception) {
+                throw new RuntimeException(exception);
             }
         }
+        for (Map.Entry<Path, BasicFileAttributes> dispatchedLogFile : dispatchedLogFiles.entrySet()) {
+            Path logFile = dispatchedLogFile.getKey();
+            String fileKey = String.valueOf(dispatchedLogFile.getValue().fileKey());
+            transformationsInFlight.put(fileKey, transformationExecutor.submit(() -> processLogFile(logFile, fileKey, outputSegment, pathToCheckpointFile)));
+        }
     }
 
-    private static long transformLogFile(Path logFile, BufferedReader reader, long lastLineProcessed) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(findPathToTransformedLogFile(logFile), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            String logLine;
-            long numberOfLinesProcessed = lastLineProcessed;
-            while ((logLine = reader.readLine()) != null) {
-                writer.write(transformLogLine(logLine));
-                writer.newLine();
-                numberOfLinesProcessed++;
+    // A failed transformation stops the transformer, just like it did while the workers were still being waited for.
+    private static void collectFinishedTransformations() {
+        Iterator<Future<?>> transformations = transformationsInFlight.values().iterator();
+        while (transformations.hasNext()) {
+            Future<?> transformation = transformations.next();
+            if (transformation.isDone()) {
+                transformations.remove();
+                awaitTransformation(transformation);
             }
-            return numberOfLinesProcessed;
         }
     }
 
-    private static Path findPathToTransformedLogFile(Path logFileForTransformation) {
+    private static void awaitTransformations() {
+        for (Future<?> transformation : transformationsInFlight.values()) {
+            awaitTransformation(transformation);
+        }
+        transformationsInFlight.clear();
+    }
+
+    private static void awaitTransformation(Future<?> transformation) {
+        try {
+            transformation.get();
+        } catch (ExecutionException exception) {
+            transformationsInFlight.values().forEach(transformationInFlight -> transformationInFlight.cancel(true));
+            throw exception.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new RuntimeException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the log files to be transformed");
+        }
+    }
+
+    // Uncommitted output can only be cut off after a crash if the committed size of the transformed file is on disk
+    // before the first line of a log file is written to it, so every file that is new, was renamed or moves on to a
+    // new output segment is registered with it first. The files of a pass are registered together and checkpointed
+    // once, instead of every worker saving the whole checkpoint for its own file. The output written under the
+    // previous name or segment of a file is committed first, so the checkpoint covers it as well. A file whose
+    // transformed file is in use by another worker is left to register itself.
+    private static void registerLogFiles(Map<Path, BasicFileAttributes> logFiles, long outputSegment, Path pathToCheckpointFile) throws IOException {
+        boolean registeredLogFiles = false;
+        for (Map.Entry<Path, BasicFileAttributes> dispatchedLogFile : logFiles.entrySet()) {
+            Path logFile = dispatchedLogFile.getKey();
+            BasicFileAttributes logFileAttributes = dispatchedLogFile.getValue();
+            String fileKey = String.valueOf(logFileAttributes.fileKey());
+            if (!shardAssignment.owns(fileKey) || isSettling(logFile, logFileAttributes)) {
+                continue;
+            }
+            FileState previousFileState = fileStateIndex.get(fileKey);
+            if (previousFileState == null && fileStateIndex.isForgotten(logFileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS))) {
+                continue;
+            }
+            if (previousFileState != null && previousFileState.outputSegment() == outputSegment
+                    && previousFileState.committedOutputOffset() != FileStateIndex.UNKNOWN_OUTPUT_OFFSET) {
+                continue;
+            }
+            long committedOutputOffset = transformedLogOutput.committedOutputOffsetOf(fileKey, findPathToTransformedLogFile(logFile, outputSegment));
+            if (committedOutputOffset == FileStateIndex.UNKNOWN_OUTPUT_OFFSET) {
+                continue;
+            }
+            previousFileState = fileStateIndex.get(fileKey);
+            fileStateIndex.put(fileKey, previousFileState == null
+                    ? new FileState(logFile, FileStateIndex.UNKNOWN_LAST_MODIFIED_NANOS, 0, 0, outputSegment, committedOutputOffset, System.currentTimeMillis())
+                    : new FileState(logFile, previousFileState.lastModifiedNanos(), previousFileState.byteOffset(), previousFileState.committedByteOffset(),
+                    outputSegment, committedOutputOffset, System.currentTimeMillis()));
+            registeredLogFiles = true;
+        }
+        if (registeredLogFiles) {
+            Checkpoint.save(pathToCheckpointFile, fileStateIndex, outputCompression);
+        }
+    }
+
+    private static void processLogFile(Path logFile, String dispatchedFileKey, long outputSegment, Path pathToCheckpointFile) {
+        LogFileTransformationEvent transformationEvent = new LogFileTransformationEvent();
+        transformationEvent.begin();
+        long transformationStartNanos = System.nanoTime();
+        try {
+            long transformedBytes = transformLogFile(logFile, dispatchedFileKey, outputSegment, pathToCheckpointFile);
+            TransformationMetrics.recordTransformedBytes(transformedBytes);
+            transformationEvent.end();
+            if (transformationEvent.shouldCommit()) {
+                transformationEvent.logFile = logFile.toString();
+                transformationEvent.transformedBytes = transformedBytes;
+                transformationEvent.commit();
+            }
+        } catch (RuntimeException exception) {
+            TransformationMetrics.recordTransformationFailure();
+            throw exception;
+        } finally {
+            TransformationMetrics.recordTransformationDuration(System.nanoTime() - transformationStartNanos);
+        }
+    }
+
+    // Returns the number of bytes of the log file that were transformed in this pass.
+    private static long transformLogFile(Path logFile, String dispatchedFileKey, long outputSegment, Path pathToCheckpointFile) {
+        try (FileChannel logFileChannel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            // Attributes are read before the transformation, so data appended while we are reading
+            // still leaves the file newer than its metadata and gets picked up by the next scan.
+            BasicFileAttributes logFileAttributes = Files.readAttributes(logFile, BasicFileAttributes.class);
+            String fileKey = String.valueOf(logFileAttributes.fileKey());
+            if (!shardAssignment.owns(fileKey)) {
+                // Events in watch mode are reported for every file in the logs directories, including those of other shards.
+                return 0;
+            }
+            if (!fileKey.equals(dispatchedFileKey)) {
+                // The file was replaced since it was dispatched, and the new one may already be in flight on another
+                // worker. It is picked up by the next scan.
+                return 0;
+            }
+            long lastModifiedNanos = logFileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            boolean compressedLogFile = isCompressedLogFile(logFile);
+            if (isSettling(logFile, logFileAttributes)) {
+                return 0;
+            }
+            FileState previousFileState = fileStateIndex.get(fileKey);
+            if (previousFileState == null && fileStateIndex.isForgotten(lastModifiedNanos)) {
+                // The file was evicted from the index while it was idle, so it was already transformed up to its end.
+                fileStateIndex.put(fileKey, new FileState(logFile, lastModifiedNanos, logFileAttributes.size(), logFileAttributes.size(),
+                        FileStateIndex.NO_OUTPUT_SEGMENT, FileStateIndex.UNKNOWN_OUTPUT_OFFSET, System.currentTimeMillis()));
+                return 0;
+            }
+            long byteOffset = findByteOffsetToResumeFrom(logFile, previousFileState, logFileAttributes.size());
+            long decompressedBytesToSkip = compressedLogFile && byteOffset == 0 ? findDecompressedBytesTransformedBefore(logFile) : 0;
+            Path transformedLogFile = findPathToTransformedLogFile(logFile, outputSegment);
+            TransformedLogWriter writer = transformedLogOutput.acquireWriter(fileKey, logFile, transformedLogFile, outputSegment,
+                    outputCompression == OutputCompression.GZIP, byteOffset);
+            try {
+                // The file was registered before the pass, but the writer may have taken over the transformed file
+                // from another log file since, and committed its output, so the state is read again. Only then is
+                // the file registered and checkpointed once more, on its own.
+                FileState currentFileState = fileStateIndex.get(fileKey);
+                if (deliveryGuarantee == DeliveryGuarantee.EXACTLY_ONCE && (currentFileState == null
+                        || currentFileState.outputSegment() != outputSegment
+                        || currentFileState.committedOutputOffset() != writer.committedOutputOffset())) {
+                    long lastKnownModifiedNanos = currentFileState == null ? FileStateIndex.UNKNOWN_LAST_MODIFIED_NANOS : currentFileState.lastModifiedNanos();
+                    fileStateIndex.put(fileKey, new FileState(logFile, lastKnownModifiedNanos, byteOffset, byteOffset,
+                            outputSegment, writer.committedOutputOffset(), System.currentTimeMillis()));
+                    Checkpoint.save(pathToCheckpointFile, fileStateIndex, outputCompression);
+                }
+                long updatedByteOffset;
+                if (compressedLogFile) {
+                    updatedByteOffset = logFileTransformer.transformGzip(logFileChannel, byteOffset, decompressedBytesToSkip, writer);
+                } else if (BinaryLogFormat.isBinaryLogFile(logFileChannel)) {
+                    updatedByteOffset = logFileTransformer.transformBinary(logFileChannel, byteOffset, writer);
+                } else {
+                    updatedByteOffset = logFileTransformer.transform(logFileChannel, byteOffset, writer);
+                }
+                fileStateIndex.put(fileKey, new FileState(logFile, lastModifiedNanos, updatedByteOffset, writer.committedSourceByteOffset(),
+                        outputSegment, writer.committedOutputOffset(), System.currentTimeMillis()));
+                transformedLogOutput.transformed(transformedLogFile, updatedByteOffset);
+                if (updatedByteOffset > byteOffset) {
+                    // The newest line of the pass was written at the latest when the file was last modified.
+                    TransformationMetrics.recordTransformationLatency(TimeUnit.MILLISECONDS.toNanos(
+                            System.currentTimeMillis() - logFileAttributes.lastModifiedTime().toMillis()));
+                }
+                return updatedByteOffset - byteOffset;
+            } finally {
+                transformedLogOutput.releaseWriter(transformedLogFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // A file with an unknown file key is new, even if it took over the name of a file that was transformed before.
+    private static long findByteOffsetToResumeFrom(Path logFile, FileState previousFileState, long fileSize) {
+        if (previousFileState == null) {
+            return 0;
+        }
+        if (previousFileState.byteOffset() > fileSize) {
+            System.err.printf("The log file %s was truncated since the last scan, transforming it from the beginning%n", logFile);
+            return 0;
+        }
+        return previousFileState.byteOffset();
+    }
+
+    // When a rotated log file is compressed, the archive holds the lines that were already transformed from the log
+    // file, so only the rest of them is transformed, into the same transformed file. The log file is found by the name
+    // it had when it was transformed last, and its output is committed first, so everything it transformed is skipped.
+    private static long findDecompressedBytesTransformedBefore(Path compressedLogFile) throws IOException {
+        String compressedLogFileName = compressedLogFile.getFileName().toString();
+        Path uncompressedLogFile = compressedLogFile.resolveSibling(compressedLogFileName.substring(0, compressedLogFileName.length() - GZIP_FILE_EXTENSION.length()));
+        Optional<Map.Entry<String, FileState>> uncompressedFileState = fileStateIndex.findByLogFile(uncompressedLogFile);
+        if (uncompressedFileState.isEmpty()) {
+            return 0;
+        }
+        String uncompressedFileKey = uncompressedFileState.get().getKey();
+        transformedLogOutput.commitWriterOf(uncompressedFileKey);
+        FileState committedFileState = fileStateIndex.get(uncompressedFileKey);
+        return committedFileState == null ? uncompressedFileState.get().getValue().committedByteOffset() : committedFileState.committedByteOffset();
+    }
+
+    // A compressed file that was modified just now may still be written by the rotation, and a truncated archive
+    // cannot be read, so it is left untracked until the scan after it has settled.
+    private static boolean isSettling(Path logFile, BasicFileAttributes logFileAttributes) {
+        return isCompressedLogFile(logFile)
+                && System.currentTimeMillis() - logFileAttributes.lastModifiedTime().toMillis() < COMPRESSED_LOG_FILE_SETTLE_TIME_MILLIS;
+    }
+
+    private static boolean isCompressedLogFile(Path logFile) {
+        return logFile.getFileName().toString().endsWith(GZIP_FILE_EXTENSION);
+    }
+
+    // Lines transformed within the same period of time go to the same output segment, so old output can be deleted
+    // a whole segment at a time. The segment is identified by the epoch milliseconds at which its period started.
+    private static long findOutputSegment(long timeMillis) {
+        if (outputSegmentDurationMillis == NO_OUTPUT_SEGMENTS) {
+            return FileStateIndex.NO_OUTPUT_SEGMENT;
+        }
+        return Math.floorDiv(timeMillis, outputSegmentDurationMillis) * outputSegmentDurationMillis;
+    }
+
+    // A compressed log file is transformed into a file without the extension, unless the output is compressed as well.
+    // The start of the output segment, if any, is appended to the name in UTC, e.g. app.log.20250101T100000Z.
+    private static Path findPathToTransformedLogFile(Path logFileForTransformation, long outputSegment) {
+        String logFileName = logFileForTransformation.getFileName().toString();
+        if (isCompressedLogFile(logFileForTransformation)) {
+            logFileName = logFileName.substring(0, logFileName.length() - GZIP_FILE_EXTENSION.length());
+        }
+        if (outputSegment != FileStateIndex.NO_OUTPUT_SEGMENT) {
+            logFileName += "." + OUTPUT_SEGMENT_FORMATTER.format(Instant.ofEpochMilli(outputSegment));
+        }
+        if (outputCompression == OutputCompression.GZIP) {
+            logFileName += GZIP_FILE_EXTENSION;
+        }
+        return findPathToTransformedLogsDirectory(logFileForTransformation.getParent()).resolve(logFileName);
+    }
+
+    private static Path findPathToTransformedLogsDirectory(Path pathToLogsDirectory) {
+        if (!transformedLogsDirectoryPerLogsDirectory) {
+            return findPathToTransformedLogsDirectory();
+        }
+        String logsDirectoryName = pathToLogsDirectory.toAbsolutePath().normalize().toString().replace('/', '_');
+        return findPathToTransformedLogsDirectory().resolve(logsDirectoryName.startsWith("_") ? logsDirectoryName.substring(1) : logsDirectoryName);
+    }
+
+    private static Path findPathToTransformedLogsDirectory() {
         try {
             Optional<String> overwrittenPathToTransformedLogsDirectory = Optional.ofNullable(System.getenv("PATH_TO_TRANSFORMED_LOGS_DIRECTORY"));
             Path pathToTransformedLogsDirectory = overwrittenPathToTransformedLogsDirectory.map(Path::of).orElseGet(() -> Path.of(DEFAULT_PATH_TO_TRANSFORMED_LOGS_DIRECTORY));
             if (!Files.isDirectory(pathToTransformedLogsDirectory)) {
                 throw new IllegalStateException("Invalid configuration state: PATH_TO_TRANSFORMED_LOGS_DIRECTORY doesn't point to a directory");
             }
-            return pathToTransformedLogsDirectory.resolve(logFileForTransformation.getFileName().toString());
+            return pathToTransformedLogsDirectory;
         } catch (Exception exception) {
             exception.printStackTrace();
             throw new IllegalStateException("Invalid configuration state: PATH_TO_TRANSFORMED_LOGS_DIRECTORY is not configured properly");
         }
     }
 
-    private static String transformLogLine(String logLine) {
-        return "%s: Transformed at %s".formatted(logLine, LocalDateTime.now());
+    enum ScanMode {
+        POLL,
+        WATCH
+    }
+
+    enum OutputCompression {
+        NONE,
+        GZIP
     }
 
-    record FileMetadata(Path logFile, FileTime lastModifiedTime, long lastLineProcessed) {
+    enum DeliveryGuarantee {
+        EXACTLY_ONCE,
+        AT_LEAST_ONCE
     }
 }
@@ -0,0 +1,18 @@
+package com.home.lab.logtransformer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.home.lab.logtransformer.LogsDirectoryScan")
+@Label("Logs Directory Scan")
+@Category("Log Transformer")
+public class LogsDirectoryScanEvent extends Event {
+
+    @Label("Logs Directory")
+    String logsDirectory;
+
+    @Label("Log Files For Transformation")
+    int logFilesForTransformation;
+}
@@ -0,0 +1,40 @@
+package com.home.lab.logtransformer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+public class MetricsServer {
+
+    private static final String METRICS_PATH = "/metrics";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Serves the metrics on a single daemon thread, so a scrape never competes with the transformation workers
+    // for more than one core and never keeps the process alive on its own.
+    public static void startMetricsServer(int port, FileStateIndex fileStateIndex) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext(METRICS_PATH, exchange -> respondWithMetrics(exchange, fileStateIndex));
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(Thread.ofPlatform().name("Metrics Server Thread").daemon().factory()));
+        httpServer.start();
+    }
+
+    private static void respondWithMetrics(HttpExchange exchange, FileStateIndex fileStateIndex) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] metrics = TransformationMetrics.renderPrometheusText(fileStateIndex).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PROMETHEUS_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, metrics.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(metrics);
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RuleChainLineTransformer implements LineTransformer {
+
+    private static final String DEFAULT_REDACTION = "***";
+    private static final String MESSAGE_FIELD = "message";
+    private static final String TRANSFORMED_AT_FIELD = "transformedAt";
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+    private static final String OPTIONAL_QUANTIFIERS = "?*{";
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private final ByteFilter[] byteFilters;
+    private final Rule[] rules;
+    private final OutputFormat outputFormat;
+    private final ThreadLocal<LineRecord> lineRecords;
+
+    private RuleChainLineTransformer(ByteFilter[] byteFilters, Rule[] rules, OutputFormat outputFormat) {
+        this.byteFilters = byteFilters;
+        this.rules = rules;
+        this.outputFormat = outputFormat;
+        this.lineRecords = ThreadLocal.withInitial(() -> new LineRecord(rules.length));
+    }
+
+    // Rules are compiled once into a single chain. Filters are pure checks of the message, so every filter that
+    // comes before the first redaction is moved to the front of the chain, and the ones that look for a plain
+    // literal are even evaluated on the raw bytes. A line that is filtered out is therefore never decoded.
+    public static RuleChainLineTransformer compile(List<String> ruleDefinitions) {
+        List<ByteFilter> byteFilters = new ArrayList<>();
+        List<Rule> hoistedFilters = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        OutputFormat outputFormat = OutputFormat.PLAIN;
+        boolean messageRedacted = false;
+        for (String ruleDefinition : ruleDefinitions) {
+            String[] ruleParts = ruleDefinition.strip().split("\\s+", 3);
+            try {
+                switch (ruleParts[0]) {
+                    case "include", "exclude" -> {
+                        boolean include = ruleParts[0].equals("include");
+                        String argument = ruleParts[2];
+                        switch (ruleParts[1]) {
+                            case "contains" -> {
+                                if (messageRedacted) {
+                                    rules.add(new ContainsFilter(argument, include));
+                                } else {
+                                    byteFilters.add(new ByteFilter(argument.getBytes(StandardCharsets.UTF_8), include));
+                                }
+                            }
+                            case "matches" -> {
+                                Rule matchesFilter = new MatchesFilter(Pattern.compile(argument), findRequiredLiteral(argument), include, rules.size() + hoistedFilters.size());
+                                (messageRedacted ? rules : hoistedFilters).add(matchesFilter);
+                            }
+                            default -> throw new IllegalStateException();
+                        }
+                    }
+                    case "extract" -> {
+                        String regex = ruleDefinition.strip().substring("extract".length()).strip();
+                        rules.add(new Extract(Pattern.compile(regex), findRequiredLiteral(regex), findGroupNames(regex), rules.size() + hoistedFilters.size()));
+                    }
+                    case "drop" -> rules.add(new Drop(ruleParts[1]));
+                    case "redact" -> {
+                        String replacement = ruleParts.length == 3 ? ruleParts[2] : DEFAULT_REDACTION;
+                        rules.add(new Redact(Pattern.compile(ruleParts[1]), findRequiredLiteral(ruleParts[1]), Matcher.quoteReplacement(replacement), rules.size() + hoistedFilters.size()));
+                        messageRedacted = true;
+                    }
+                    case "encode" -> outputFormat = OutputFormat.valueOf(ruleParts[1].toUpperCase());
+                    default -> throw new IllegalStateException();
+                }
+            } catch (Exception exception) {
+                exception.printStackTrace();
+                throw new IllegalStateException("Invalid configuration state: the transformation rule '%s' could not be compiled".formatted(ruleDefinition));
+            }
+        }
+        hoistedFilters.addAll(rules);
+        return new RuleChainLineTransformer(byteFilters.toArray(ByteFilter[]::new), hoistedFilters.toArray(Rule[]::new), outputFormat);
+    }
+
+    @Override
+    public boolean transform(ByteBuffer source, int lineStart, int lineEnd, TransformedLogWriter writer) throws IOException {
+        for (ByteFilter byteFilter : byteFilters) {
+            if (byteFilter.include() != containsBytes(source, lineStart, lineEnd, byteFilter.literal())) {
+                return false;
+            }
+        }
+        if (rules.length == 0 && outputFormat == OutputFormat.PLAIN) {
+            writer.write(source, lineStart, lineEnd - lineStart);
+            writer.write(TransformationTimestamp.currentSuffix());
+            return true;
+        }
+        LineRecord lineRecord = lineRecords.get();
+        lineRecord.reset(decode(source, lineStart, lineEnd, lineRecord));
+        for (Rule rule : rules) {
+            if (!rule.apply(lineRecord)) {
+                return false;
+            }
+        }
+        switch (outputFormat) {
+            case PLAIN -> {
+                writer.write(lineRecord.message.getBytes(StandardCharsets.UTF_8));
+                writer.write(TransformationTimestamp.currentSuffix());
+            }
+            case JSON -> writer.write(encodeAsJson(lineRecord).getBytes(StandardCharsets.UTF_8));
+            case KV -> writer.write(encodeAsKeyValuePairs(lineRecord).getBytes(StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer source, int lineStart, int lineEnd, LineRecord lineRecord) {
+        int lineLength = lineEnd - lineStart;
+        if (lineRecord.decodingBuffer.length < lineLength) {
+            lineRecord.decodingBuffer = new byte[Math.max(lineLength, lineRecord.decodingBuffer.length * 2)];
+        }
+        source.get(lineStart, lineRecord.decodingBuffer, 0, lineLength);
+        return new String(lineRecord.decodingBuffer, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    private static boolean containsBytes(ByteBuffer source, int lineStart, int lineEnd, byte[] literal) {
+        int lastPossibleStart = lineEnd - literal.length;
+        for (int start = lineStart; start <= lastPossibleStart; start++) {
+            int index = 0;
+            while (index < literal.length && source.get(start + index) == literal[index]) {
+                index++;
+            }
+            if (index == literal.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns a literal that every match of the regex must contain, or null if it cannot be determined cheaply.
+    // Checking for it with indexOf skips running the regex for most lines that cannot match anyway.
+    static String findRequiredLiteral(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return null;
+        }
+        int index = regex.startsWith("^") ? 1 : 0;
+        StringBuilder requiredLiteral = new StringBuilder();
+        while (index < regex.length() && REGEX_METACHARACTERS.indexOf(regex.charAt(index)) < 0) {
+            requiredLiteral.append(regex.charAt(index++));
+        }
+        if (index < regex.length() && OPTIONAL_QUANTIFIERS.indexOf(regex.charAt(index)) >= 0 && !requiredLiteral.isEmpty()) {
+            requiredLiteral.setLength(requiredLiteral.length() - 1);
+        }
+        return requiredLiteral.isEmpty() ? null : requiredLiteral.toString();
+    }
+
+    private static String[] findGroupNames(String regex) {
+        List<String> groupNames = new ArrayList<>();
+        Matcher namedGroupMatcher = NAMED_GROUP.matcher(regex);
+        while (namedGroupMatcher.find()) {
+            groupNames.add(namedGroupMatcher.group(1));
+        }
+        if (groupNames.isEmpty()) {
+            throw new IllegalStateException("An extract rule needs at least one named group");
+        }
+        return groupNames.toArray(String[]::new);
+    }
+
+    private static String encodeAsJson(LineRecord lineRecord) {
+        StringBuilder json = lineRecord.encodingBuffer;
+        json.setLength(0);
+        json.append('{');
+        for (Map.Entry<String, String> field : lineRecord.fields.entrySet()) {
+            appendJsonString(json, field.getKey());
+            json.append(':');
+            appendJsonString(json, field.getValue());
+            json.append(',');
+        }
+        appendJsonString(json, TRANSFORMED_AT_FIELD);
+        json.append(':');
+        appendJsonString(json, TransformationTimestamp.currentTimestamp());
+        return json.append('}').toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            switch (character) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (character < 0x20) {
+                        json.append("\\u%04x".formatted((int) character));
+                    } else {
+                        json.append(character);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    private static String encodeAsKeyValuePairs(LineRecord lineRecord) {
+        StringBuilder keyValuePairs = lineRecord.encodingBuffer;
+        keyValuePairs.setLength(0);
+        for (Map.Entry<String, String> field : lineRecord.fields.entrySet()) {
+            appendKeyValuePair(keyValuePairs, field.getKey(), field.getValue());
+            keyValuePairs.append(' ');
+        }
+        appendKeyValuePair(keyValuePairs, TRANSFORMED_AT_FIELD, TransformationTimestamp.currentTimestamp());
+        return keyValuePairs.toString();
+    }
+
+    private static void appendKeyValuePair(StringBuilder keyValuePairs, String key, String value) {
+        keyValuePairs.append(key).append('=');
+        if (value.isEmpty() || value.indexOf(' ') >= 0 || value.indexOf('"') >= 0) {
+            keyValuePairs.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        } else {
+            keyValuePairs.append(value);
+        }
+    }
+
+    enum OutputFormat {
+        PLAIN,
+        JSON,
+        KV
+    }
+
+    private record ByteFilter(byte[] literal, boolean include) {
+    }
+
+    private sealed interface Rule permits ContainsFilter, MatchesFilter, Extract, Drop, Redact {
+
+        // Returns false if the line has to be dropped.
+        boolean apply(LineRecord lineRecord);
+    }
+
+    private record ContainsFilter(String literal, boolean include) implements Rule {
+
+        @Override
+        public boolean apply(LineRecord lineRecord) {
+            return include == lineRecord.message.contains(literal);
+        }
+    }
+
+    private record MatchesFilter(Pattern pattern, String requiredLiteral, boolean include, int ruleIndex) implements Rule {
+
+        @Override
+        public boolean apply(LineRecord lineRecord) {
+            boolean matches = (requiredLiteral == null || lineRecord.message.contains(requiredLiteral))
+                    && lineRecord.matcher(ruleIndex, pattern, lineRecord.message).find();
+            return include == matches;
+        }
+    }
+
+    private record Extract(Pattern pattern, String requiredLiteral, String[] groupNames, int ruleIndex) implements Rule {
+
+        @Override
+        public boolean apply(LineRecord lineRecord) {
+            if (requiredLiteral != null && !lineRecord.message.contains(requiredLiteral)) {
+                return true;
+            }
+            Matcher matcher = lineRecord.matcher(ruleIndex, pattern, lineRecord.message);
+            if (matcher.find()) {
+                Map<String, String> fields = lineRecord.extractedFields();
+                for (String groupName : groupNames) {
+                    String value = matcher.group(groupName);
+                    if (value != null) {
+                        fields.put(groupName, value);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private record Drop(String field) implements Rule {
+
+        @Override
+        public boolean apply(LineRecord lineRecord) {
+            lineRecord.fields.remove(field);
+            return true;
+        }
+    }
+
+    private record Redact(Pattern pattern, String requiredLiteral, String replacement, int ruleIndex) implements Rule {
+
+        @Override
+        public boolean apply(LineRecord lineRecord) {
+            lineRecord.message = redact(lineRecord, lineRecord.message);
+            lineRecord.fields.replaceAll((field, value) -> redact(lineRecord, value));
+            return true;
+        }
+
+        private String redact(LineRecord lineRecord, String value) {
+            if (requiredLiteral != null && !value.contains(requiredLiteral)) {
+                return value;
+            }
+            return lineRecord.matcher(ruleIndex, pattern, value).replaceAll(replacement);
+        }
+    }
+
+    // The mutable state of the line currently going through the chain. Each worker thread reuses its own instance.
+    private static class LineRecord {
+        private final Map<String, String> fields = new LinkedHashMap<>();
+        private final Matcher[] matchers;
+        private final StringBuilder encodingBuffer = new StringBuilder();
+        private byte[] decodingBuffer = new byte[1024];
+        private String message;
+        private boolean fieldsExtracted;
+
+        private LineRecord(int numberOfRules) {
+            this.matchers = new Matcher[numberOfRules];
+        }
+
+        private void reset(String message) {
+            this.message = message;
+            this.fields.clear();
+            this.fields.put(MESSAGE_FIELD, message);
+            this.fieldsExtracted = false;
+        }
+
+        private Matcher matcher(int ruleIndex, Pattern pattern, String input) {
+            Matcher matcher = matchers[ruleIndex];
+            if (matcher == null) {
+                matcher = pattern.matcher(input);
+                matchers[ruleIndex] = matcher;
+                return matcher;
+            }
+            return matcher.reset(input);
+        }
+
+        // Until something is extracted, a line consists of a single field holding the whole message.
+        private Map<String, String> extractedFields() {
+            if (!fieldsExtracted) {
+                fields.clear();
+                fieldsExtracted = true;
+            }
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.home.lab.logtransformer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+public class ShardAssignment {
+
+    public static final ShardAssignment SINGLE_SHARD = new ShardAssignment(0, 1);
+
+    private static final int VIRTUAL_NODES_PER_SHARD = 128;
+    private static final String SHARD_CHECKPOINT_FILE_SUFFIX = ".shard-";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int shardIndex;
+    private final int shardCount;
+    // The hash ring, sorted by position. Every shard owns the positions from the one before its own up to its own.
+    private final long[] ringPositions;
+    private final int[] ringShards;
+
+    // Every shard is placed on the ring many times, so the files are spread evenly, and a change in the number of shards
+    // only moves about 1/N of the files to a different shard, instead of reassigning nearly all of them.
+    public ShardAssignment(int shardIndex, int shardCount) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        RingNode[] ring = IntStream.range(0, shardCount).boxed()
+                .flatMap(shard -> IntStream.range(0, VIRTUAL_NODES_PER_SHARD)
+                        .mapToObj(virtualNode -> new RingNode(hash("shard-%d-%d".formatted(shard, virtualNode)), shard)))
+                .sorted(Comparator.comparingLong(RingNode::position))
+                .toArray(RingNode[]::new);
+        this.ringPositions = Arrays.stream(ring).mapToLong(RingNode::position).toArray();
+        this.ringShards = Arrays.stream(ring).mapToInt(RingNode::shard).toArray();
+    }
+
+    public boolean owns(String fileKey) {
+        return shardCount == 1 || shardOf(fileKey) == shardIndex;
+    }
+
+    public int shardOf(String fileKey) {
+        int ringIndex = Arrays.binarySearch(ringPositions, hash(shardKey(fileKey)));
+        if (ringIndex < 0) {
+            ringIndex = -ringIndex - 1;
+        }
+        return ringShards[ringIndex == ringPositions.length ? 0 : ringIndex];
+    }
+
+    // A single instance keeps using the configured checkpoint file, so its progress survives switching to shards.
+    public Path checkpointFileOf(Path pathToCheckpointFile) {
+        if (shardCount == 1) {
+            return pathToCheckpointFile;
+        }
+        return pathToCheckpointFile.resolveSibling(pathToCheckpointFile.getFileName() + SHARD_CHECKPOINT_FILE_SUFFIX + shardIndex);
+    }
+
+    public static boolean isShardCheckpointFile(Path pathToCheckpointFile, Path candidate) {
+        String prefix = pathToCheckpointFile.getFileName() + SHARD_CHECKPOINT_FILE_SUFFIX;
+        String candidateName = candidate.getFileName().toString();
+        return candidateName.startsWith(prefix) && candidateName.length() > prefix.length()
+                && candidateName.substring(prefix.length()).chars().allMatch(Character::isDigit);
+    }
+
+    // Only the inode is hashed. It survives the renames of a rotation, so a file keeps its shard for its whole life,
+    // and unlike the device number it is the same on every node that mounts the same shared volume.
+    static String shardKey(String fileKey) {
+        int inodeStart = fileKey.indexOf("ino=");
+        if (inodeStart == -1) {
+            return fileKey;
+        }
+        int inodeEnd = fileKey.indexOf(')', inodeStart);
+        return fileKey.substring(inodeStart, inodeEnd == -1 ? fileKey.length() : inodeEnd);
+    }
+
+    // FNV-1a, followed by the finalizer of MurmurHash3, since FNV alone spreads similar keys poorly over the ring. The
+    // hash only depends on the bytes of the key, so every instance places the files the same way.
+    private static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte character : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (character & 0xff)) * FNV_PRIME;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private record RingNode(long position, int shard) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class TimestampSuffixLineTransformer implements LineTransformer {
+
+    // Produces exactly the bytes of "%s: Transformed at %s".formatted(line, LocalDateTime.now()) without decoding the line.
+    @Override
+    public boolean transform(ByteBuffer source, int lineStart, int lineEnd, TransformedLogWriter writer) throws IOException {
+        writer.write(source, lineStart, lineEnd - lineStart);
+        writer.write(TransformationTimestamp.currentSuffix());
+        return true;
+    }
+}
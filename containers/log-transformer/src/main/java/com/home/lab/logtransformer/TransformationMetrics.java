@@ -0,0 +1,93 @@
+package com.home.lab.logtransformer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransformationMetrics {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999, 1.0};
+
+    // Striped counters, so the transformation workers don't contend on a single cache line when they record.
+    private static final LongAdder transformedLines = new LongAdder();
+    private static final LongAdder transformedBytes = new LongAdder();
+    private static final LongAdder transformationFailures = new LongAdder();
+    private static final LatencyHistogram scanDuration = new LatencyHistogram();
+    private static final LatencyHistogram transformationDuration = new LatencyHistogram();
+    private static final LatencyHistogram transformationLatency = new LatencyHistogram();
+    private static volatile long totalLagBytes;
+    private static volatile long maxFileLagBytes;
+
+    public static void recordTransformedLines(long lines) {
+        transformedLines.add(lines);
+    }
+
+    public static void recordTransformedBytes(long bytes) {
+        transformedBytes.add(bytes);
+    }
+
+    public static void recordTransformationFailure() {
+        transformationFailures.increment();
+    }
+
+    public static void recordScanDuration(long durationNanos) {
+        scanDuration.record(durationNanos);
+    }
+
+    public static void recordTransformationDuration(long durationNanos) {
+        transformationDuration.record(durationNanos);
+    }
+
+    public static void recordTransformationLatency(long latencyNanos) {
+        transformationLatency.record(latencyNanos);
+    }
+
+    // Taken from the sizes the scan reads anyway, so a scrape doesn't look at any file.
+    public static void recordLag(long totalBytes, long maxFileBytes) {
+        totalLagBytes = totalBytes;
+        maxFileLagBytes = maxFileBytes;
+    }
+
+    // Renders all metrics in the Prometheus text exposition format. Throughput is exposed as counters, from which
+    // Prometheus derives lines and bytes per second with rate(). The lag is only exposed as a total and a maximum over
+    // all files, since a series per file would keep growing with every rotated name.
+    public static String renderPrometheusText(FileStateIndex fileStateIndex) {
+        StringBuilder text = new StringBuilder();
+        appendCounter(text, "log_transformer_transformed_lines_total", "Number of transformed lines.", transformedLines.sum());
+        appendCounter(text, "log_transformer_transformed_bytes_total", "Number of bytes read from the log files.", transformedBytes.sum());
+        appendCounter(text, "log_transformer_transformation_failures_total", "Number of log file transformations that failed.", transformationFailures.sum());
+        appendSummary(text, "log_transformer_scan_duration_seconds", "Time spent scanning the logs directory.", scanDuration);
+        appendSummary(text, "log_transformer_transformation_duration_seconds", "Time spent transforming a single log file in a pass.", transformationDuration);
+        appendSummary(text, "log_transformer_transformation_latency_seconds", "Time from the last write to a log file until its lines were transformed.",
+                transformationLatency);
+        appendGauge(text, "log_transformer_processed_files", "Number of log files whose progress is tracked.", fileStateIndex.size());
+        appendGauge(text, "log_transformer_file_state_index_bytes", "Estimated heap used by the progress of the tracked log files.", fileStateIndex.estimatedFootprintBytes());
+        appendCounter(text, "log_transformer_file_state_index_evictions_total", "Number of log files that are no longer tracked.", fileStateIndex.evictedEntries());
+        appendGauge(text, "log_transformer_lag_bytes", "Bytes of all log files that are not transformed yet, as of the last scan.", totalLagBytes);
+        appendGauge(text, "log_transformer_max_file_lag_bytes", "Bytes of the log file furthest behind that are not transformed yet, as of the last scan.",
+                maxFileLagBytes);
+        return text.toString();
+    }
+
+    private static void appendCounter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendGauge(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void appendSummary(StringBuilder text, String name, String help, LatencyHistogram histogram) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" summary\n");
+        for (double quantile : QUANTILES) {
+            text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.valueAtQuantileNanos(quantile) / NANOS_PER_SECOND).append('\n');
+        }
+        text.append(name).append("_sum ").append(histogram.sumNanos() / NANOS_PER_SECOND).append('\n');
+        text.append(name).append("_count ").append(histogram.count()).append('\n');
+    }
+}
@@ -0,0 +1,36 @@
+package com.home.lab.logtransformer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+public class TransformationTimestamp {
+
+    private static final String SUFFIX_FORMAT = ": Transformed at %s";
+
+    private static volatile CachedTimestamp cachedTimestamp = new CachedTimestamp(Long.MIN_VALUE, "", new byte[0]);
+
+    // Formatting a timestamp for every line is the most expensive part of the transformation, so the encoded
+    // suffix is shared by all lines transformed within the same millisecond. The returned array must not be modified.
+    public static byte[] currentSuffix() {
+        return currentCachedTimestamp().suffix();
+    }
+
+    public static String currentTimestamp() {
+        return currentCachedTimestamp().timestamp();
+    }
+
+    private static CachedTimestamp currentCachedTimestamp() {
+        long currentTimeMillis = System.currentTimeMillis();
+        CachedTimestamp currentCachedTimestamp = cachedTimestamp;
+        if (currentCachedTimestamp.timeMillis() != currentTimeMillis) {
+            String timestamp = LocalDateTime.now().toString();
+            byte[] suffix = SUFFIX_FORMAT.formatted(timestamp).getBytes(StandardCharsets.UTF_8);
+            currentCachedTimestamp = new CachedTimestamp(currentTimeMillis, timestamp, suffix);
+            cachedTimestamp = currentCachedTimestamp;
+        }
+        return currentCachedTimestamp;
+    }
+
+    private record CachedTimestamp(long timeMillis, String timestamp, byte[] suffix) {
+    }
+}
@@ -0,0 +1,162 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+// A sparse index next to a transformed file, mapping the time lines were transformed at to the offset of the first of
+// them in the file. Every entry is the time in epoch milliseconds (long) followed by the offset (long), and both only
+// ever grow, since the file is only appended to, so the entries can be binary searched by either of them.
+public class TransformedLogIndex implements AutoCloseable {
+
+    public static final String INDEX_FILE_EXTENSION = ".idx";
+    public static final long NO_INDEX = 0;
+
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+    // Besides every interval of bytes, a line starts a new entry once this much time has passed since the last one,
+    // so the first lines after a quiet period are found without reading the ones from before it.
+    private static final long MAX_TIME_BETWEEN_ENTRIES_MILLIS = 1000;
+    private static final int INITIAL_PENDING_ENTRIES = 64;
+
+    private final FileChannel indexFileChannel;
+    private final long indexIntervalBytes;
+    private ByteBuffer pendingEntries = ByteBuffer.allocate(INITIAL_PENDING_ENTRIES * ENTRY_SIZE);
+    private long lastIndexedOffset;
+    private long lastIndexedMillis;
+
+    private TransformedLogIndex(FileChannel indexFileChannel, long indexIntervalBytes) {
+        this.indexFileChannel = indexFileChannel;
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+
+    // Entries that point past the end of the transformed file, because it was cut back or replaced since, are dropped
+    // first, so the offsets keep growing. The first line written after opening always gets an entry.
+    public static TransformedLogIndex open(Path transformedLogFile, long transformedLogFileSize, long indexIntervalBytes) throws IOException {
+        Path indexFile = indexFileOf(transformedLogFile);
+        truncate(indexFile, transformedLogFileSize);
+        return new TransformedLogIndex(FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+                indexIntervalBytes);
+    }
+
+    public static Path indexFileOf(Path transformedLogFile) {
+        return transformedLogFile.resolveSibling(transformedLogFile.getFileName() + INDEX_FILE_EXTENSION);
+    }
+
+    // Called for every line with the offset it starts at. Most calls only compare the offset and the time. A clock
+    // that is set back never makes the times of the entries go down, so they stay sorted.
+    public void lineStartsAt(long outputOffset) {
+        long currentTimeMillis = Math.max(System.currentTimeMillis(), lastIndexedMillis);
+        if (outputOffset - lastIndexedOffset < indexIntervalBytes && currentTimeMillis - lastIndexedMillis < MAX_TIME_BETWEEN_ENTRIES_MILLIS) {
+            return;
+        }
+        if (!pendingEntries.hasRemaining()) {
+            pendingEntries = ByteBuffer.allocate(pendingEntries.capacity() * 2).put(pendingEntries.flip());
+        }
+        pendingEntries.putLong(currentTimeMillis).putLong(outputOffset);
+        lastIndexedOffset = outputOffset;
+        lastIndexedMillis = currentTimeMillis;
+    }
+
+    // Called once the output the pending entries point into is committed, so the index never points past committed
+    // output. Losing the entries of uncommitted output only makes the index sparser.
+    public void commit() throws IOException {
+        pendingEntries.flip();
+        while (pendingEntries.hasRemaining()) {
+            indexFileChannel.write(pendingEntries);
+        }
+        pendingEntries.clear();
+        indexFileChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexFileChannel.close();
+    }
+
+    // Drops every entry that points past the given offset of the transformed file, together with a partially written
+    // last entry, which is what a crash in the middle of a write leaves behind.
+    public static void truncate(Path indexFile, long transformedLogFileSize) throws IOException {
+        if (Files.notExists(indexFile)) {
+            return;
+        }
+        try (FileChannel indexFileChannel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            long keptEntries = 0;
+            long high = indexFileChannel.size() / ENTRY_SIZE;
+            while (keptEntries < high) {
+                long middle = (keptEntries + high) >>> 1;
+                if (readOffset(indexFileChannel, middle, entry) > transformedLogFileSize) {
+                    high = middle;
+                } else {
+                    keptEntries = middle + 1;
+                }
+            }
+            if (keptEntries * ENTRY_SIZE < indexFileChannel.size()) {
+                indexFileChannel.truncate(keptEntries * ENTRY_SIZE);
+                indexFileChannel.force(false);
+            }
+        }
+    }
+
+    // Finds the part of the transformed file that holds every line transformed from the start time up to, but not
+    // including, the end time. It starts at the last entry before the start time and ends at the first entry at or after
+    // the end time, so it may hold a few lines from right outside the range, at most an index interval on each side.
+    // The lines after the last entry were transformed less than a second after it, so a range that starts later than
+    // that doesn't include them. Returns nothing if the file has no line from the range.
+    public static Optional<OutputRange> findRange(Path transformedLogFile, long fromMillis, long toMillis) throws IOException {
+        Path indexFile = indexFileOf(transformedLogFile);
+        try (FileChannel indexFileChannel = FileChannel.open(indexFile, StandardOpenOption.READ);
+             FileChannel transformedLogFileChannel = FileChannel.open(transformedLogFile, StandardOpenOption.READ)) {
+            long transformedLogFileSize = transformedLogFileChannel.size();
+            int entries = (int) Math.min(indexFileChannel.size() / ENTRY_SIZE, Integer.MAX_VALUE / ENTRY_SIZE);
+            if (entries == 0) {
+                return transformedLogFileSize == 0 ? Optional.empty() : Optional.of(new OutputRange(0, transformedLogFileSize));
+            }
+            MappedByteBuffer index = indexFileChannel.map(FileChannel.MapMode.READ_ONLY, 0, (long) entries * ENTRY_SIZE);
+            int firstEntryAfterStart = firstEntryAfter(index, entries, fromMillis - 1);
+            int firstEntryAfterEnd = firstEntryAfter(index, entries, toMillis - 1);
+            if (firstEntryAfterStart == entries && fromMillis >= timeOf(index, entries - 1) + MAX_TIME_BETWEEN_ENTRIES_MILLIS) {
+                return Optional.empty();
+            }
+            long startOffset = firstEntryAfterStart == 0 ? 0 : offsetOf(index, firstEntryAfterStart - 1);
+            long endOffset = firstEntryAfterEnd == entries ? transformedLogFileSize : Math.min(offsetOf(index, firstEntryAfterEnd), transformedLogFileSize);
+            return startOffset < endOffset ? Optional.of(new OutputRange(startOffset, endOffset)) : Optional.empty();
+        }
+    }
+
+    // Returns the first entry with a time after the given one, or the number of entries if there is none.
+    private static int firstEntryAfter(MappedByteBuffer index, int entries, long timeMillis) {
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timeOf(index, middle) > timeMillis) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private static long timeOf(ByteBuffer index, int entry) {
+        return index.getLong(entry * ENTRY_SIZE);
+    }
+
+    private static long offsetOf(ByteBuffer index, int entry) {
+        return index.getLong(entry * ENTRY_SIZE + Long.BYTES);
+    }
+
+    private static long readOffset(FileChannel indexFileChannel, long entryNumber, ByteBuffer entry) throws IOException {
+        indexFileChannel.read(entry.clear(), entryNumber * ENTRY_SIZE);
+        return entry.getLong(Long.BYTES);
+    }
+
+    public record OutputRange(long startOffset, long endOffset) {
+    }
+}
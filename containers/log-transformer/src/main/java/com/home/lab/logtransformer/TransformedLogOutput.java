@@ -0,0 +1,273 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TransformedLogOutput {
+
+    private static final long IDLE_WRITER_TIMEOUT_MILLIS = 60000;
+
+    // Writers are kept by the transformed file they write to, so a transformed file never has two writers at once,
+    // even while the log file it was written for and the one that took over its name are both being transformed.
+    private final Map<Path, OpenWriter> openWriters = new ConcurrentHashMap<>();
+    // The transformed file each log file currently has a writer for, by the file key of the log file.
+    private final Map<String, Path> transformedLogFiles = new ConcurrentHashMap<>();
+    // A writer is only ever used while holding the lock of its transformed file. Every transformed file has its own
+    // lock, so a worker never waits for another one that writes to a different file, and the lock is dropped together
+    // with the writer. A thread holds at most one of these locks at a time, so they can't deadlock.
+    private final Map<Path, ReentrantLock> transformedLogFileLocks = new ConcurrentHashMap<>();
+    private final FileStateIndex fileStateIndex;
+    private final ExecutorService compressionExecutor;
+    private final long groupCommitIntervalMillis;
+    private final long groupCommitBytes;
+    private final long indexIntervalBytes;
+    private final AtomicBoolean committedSinceLastGroupCommit = new AtomicBoolean();
+
+    public TransformedLogOutput(FileStateIndex fileStateIndex, ExecutorService compressionExecutor, long groupCommitIntervalMillis, long groupCommitBytes,
+                                long indexIntervalBytes) {
+        this.fileStateIndex = fileStateIndex;
+        this.compressionExecutor = compressionExecutor;
+        this.groupCommitIntervalMillis = groupCommitIntervalMillis;
+        this.groupCommitBytes = groupCommitBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+    }
+
+    // Returns the writer of the log file for the given transformed file, and keeps the transformed file locked until
+    // it is released. If the log file was renamed since its writer was opened, or its output moved on to the next
+    // segment, its previous writer is committed and closed first. If the transformed file still has a writer of
+    // another log file, usually the one that had the same name before a rotation, that writer is committed and closed
+    // as well, so the new writer starts after all of its output.
+    public TransformedLogWriter acquireWriter(String fileKey, Path logFile, Path transformedLogFile, long outputSegment, boolean gzipOutput,
+                                              long byteOffset) throws IOException {
+        Path previousTransformedLogFile = transformedLogFiles.get(fileKey);
+        if (previousTransformedLogFile != null && !previousTransformedLogFile.equals(transformedLogFile)) {
+            ReentrantLock previousLock = lock(previousTransformedLogFile);
+            try {
+                OpenWriter previousWriter = openWriters.get(previousTransformedLogFile);
+                if (previousWriter != null && previousWriter.fileKey().equals(fileKey)) {
+                    commitAndClose(previousTransformedLogFile, previousWriter, false);
+                }
+            } finally {
+                unlock(previousTransformedLogFile, previousLock);
+            }
+        }
+        ReentrantLock lock = lock(transformedLogFile);
+        try {
+            OpenWriter openWriter = openWriters.get(transformedLogFile);
+            if (openWriter != null && (!openWriter.fileKey().equals(fileKey) || !openWriter.logFile().equals(logFile))) {
+                commitAndClose(transformedLogFile, openWriter, !openWriter.fileKey().equals(fileKey));
+                openWriter = null;
+            }
+            if (openWriter == null) {
+                TransformedLogWriter writer;
+                if (gzipOutput) {
+                    writer = TransformedLogWriter.openGzip(transformedLogFile, compressionExecutor);
+                } else if (indexIntervalBytes != TransformedLogIndex.NO_INDEX) {
+                    writer = TransformedLogWriter.openIndexed(transformedLogFile, indexIntervalBytes);
+                } else {
+                    writer = TransformedLogWriter.open(transformedLogFile);
+                }
+                writer.resumeFrom(byteOffset);
+                openWriter = new OpenWriter(fileKey, logFile, outputSegment, writer, System.currentTimeMillis());
+                openWriters.put(transformedLogFile, openWriter);
+                transformedLogFiles.put(fileKey, transformedLogFile);
+            }
+            return openWriter.writer();
+        } catch (IOException | RuntimeException exception) {
+            unlock(transformedLogFile, lock);
+            throw exception;
+        }
+    }
+
+    // Called by the transformation worker right after a pass over the file, while it still holds the transformed
+    // file. A file that produced enough output is committed right away, anything smaller waits for the next group
+    // commit. A file that is transformed again and again is rarely free when the group commit comes around, so its
+    // output is also committed here once it is due.
+    public void transformed(Path transformedLogFile, long byteOffset) throws IOException {
+        OpenWriter openWriter = openWriters.get(transformedLogFile);
+        openWriter.writer().advanceSourceByteOffset(byteOffset);
+        long timeSinceLastCommitMillis = System.currentTimeMillis() - openWriter.lastCommitMillis();
+        if (openWriter.writer().uncommittedBytes() >= groupCommitBytes
+                || (openWriter.writer().hasUncommittedOutput() && timeSinceLastCommitMillis >= groupCommitIntervalMillis)) {
+            commit(transformedLogFile, openWriter);
+        }
+    }
+
+    // Commits the output of the log file right away, if it has a writer that is not in use.
+    public void commitWriterOf(String fileKey) throws IOException {
+        Path transformedLogFile = transformedLogFiles.get(fileKey);
+        if (transformedLogFile == null) {
+            return;
+        }
+        ReentrantLock lock = lock(transformedLogFile);
+        try {
+            OpenWriter openWriter = openWriters.get(transformedLogFile);
+            if (openWriter != null && openWriter.fileKey().equals(fileKey) && openWriter.writer().hasUncommittedOutput()) {
+                commit(transformedLogFile, openWriter);
+            }
+        } finally {
+            unlock(transformedLogFile, lock);
+        }
+    }
+
+    // Returns the offset up to which the transformed file is committed, after committing the output the log file
+    // wrote under its previous name or output segment. Anything after it is uncommitted output of the current writer of
+    // the transformed file, which is cut off after a crash. Called before the log file is dispatched, so it never waits
+    // for a worker: if either file is in use, the offset is unknown and the worker registers the log file itself.
+    public long committedOutputOffsetOf(String fileKey, Path transformedLogFile) throws IOException {
+        Path previousTransformedLogFile = transformedLogFiles.get(fileKey);
+        if (previousTransformedLogFile != null) {
+            ReentrantLock previousLock = tryLock(previousTransformedLogFile);
+            if (previousLock == null) {
+                return FileStateIndex.UNKNOWN_OUTPUT_OFFSET;
+            }
+            try {
+                OpenWriter previousWriter = openWriters.get(previousTransformedLogFile);
+                if (previousWriter != null && previousWriter.fileKey().equals(fileKey) && previousWriter.writer().hasUncommittedOutput()) {
+                    commit(previousTransformedLogFile, previousWriter);
+                }
+            } finally {
+                unlock(previousTransformedLogFile, previousLock);
+            }
+        }
+        ReentrantLock lock = tryLock(transformedLogFile);
+        if (lock == null) {
+            return FileStateIndex.UNKNOWN_OUTPUT_OFFSET;
+        }
+        try {
+            OpenWriter openWriter = openWriters.get(transformedLogFile);
+            if (openWriter != null) {
+                return openWriter.writer().committedOutputOffset();
+            }
+            return Files.size(transformedLogFile);
+        } catch (NoSuchFileException exception) {
+            return 0;
+        } finally {
+            unlock(transformedLogFile, lock);
+        }
+    }
+
+    public void releaseWriter(Path transformedLogFile) {
+        unlock(transformedLogFile, transformedLogFileLocks.get(transformedLogFile));
+    }
+
+    // Commits every writer whose oldest uncommitted output is older than the group commit interval, and closes writers
+    // that had nothing to write for a while. Writers that are in use right now are skipped. Returns true if anything
+    // was committed since the last call, including the commits of the workers.
+    public boolean commitDue() throws IOException {
+        long currentTimeMillis = System.currentTimeMillis();
+        for (Path transformedLogFile : openWriters.keySet()) {
+            ReentrantLock lock = tryLock(transformedLogFile);
+            if (lock == null) {
+                continue;
+            }
+            try {
+                OpenWriter openWriter = openWriters.get(transformedLogFile);
+                if (openWriter == null) {
+                    continue;
+                }
+                TransformedLogWriter writer = openWriter.writer();
+                long timeSinceLastCommitMillis = currentTimeMillis - openWriter.lastCommitMillis();
+                if (writer.hasUncommittedOutput() && timeSinceLastCommitMillis >= groupCommitIntervalMillis) {
+                    commit(transformedLogFile, openWriter);
+                } else if (!writer.hasUncommittedOutput() && timeSinceLastCommitMillis >= IDLE_WRITER_TIMEOUT_MILLIS) {
+                    writer.close();
+                    openWriters.remove(transformedLogFile);
+                    transformedLogFiles.remove(openWriter.fileKey(), transformedLogFile);
+                }
+            } finally {
+                unlock(transformedLogFile, lock);
+            }
+        }
+        return committedSinceLastGroupCommit.getAndSet(false);
+    }
+
+    // Called once on shutdown, after the last pass. Commits the remaining output of every writer and closes it.
+    public void close() throws IOException {
+        for (Map.Entry<Path, OpenWriter> openWriter : openWriters.entrySet()) {
+            if (openWriter.getValue().writer().hasUncommittedOutput()) {
+                commit(openWriter.getKey(), openWriter.getValue());
+            }
+            openWriter.getValue().writer().close();
+        }
+        openWriters.clear();
+        transformedLogFiles.clear();
+        transformedLogFileLocks.clear();
+    }
+
+    public long groupCommitIntervalMillis() {
+        return groupCommitIntervalMillis;
+    }
+
+    private void commit(Path transformedLogFile, OpenWriter openWriter) throws IOException {
+        openWriter.writer().commit();
+        fileStateIndex.commit(openWriter.fileKey(), openWriter.logFile(), openWriter.writer().committedSourceByteOffset(),
+                openWriter.outputSegment(), openWriter.writer().committedOutputOffset());
+        openWriters.put(transformedLogFile, openWriter.committedAt(System.currentTimeMillis()));
+        committedSinceLastGroupCommit.set(true);
+    }
+
+    // A log file whose writer is taken over by another one no longer owns the end of the transformed file, so its
+    // output offset is forgotten, and a restart never cuts off the output of the log file that took over. A writer of
+    // the log file itself without uncommitted output is just closed, since its state may already have been registered
+    // for the next output segment or name.
+    private void commitAndClose(Path transformedLogFile, OpenWriter openWriter, boolean takenOver) throws IOException {
+        if (takenOver || openWriter.writer().hasUncommittedOutput()) {
+            openWriter.writer().commit();
+            fileStateIndex.commit(openWriter.fileKey(), openWriter.logFile(), openWriter.writer().committedSourceByteOffset(), openWriter.outputSegment(),
+                    takenOver ? FileStateIndex.UNKNOWN_OUTPUT_OFFSET : openWriter.writer().committedOutputOffset());
+            committedSinceLastGroupCommit.set(true);
+        }
+        openWriter.writer().close();
+        openWriters.remove(transformedLogFile);
+        transformedLogFiles.remove(openWriter.fileKey(), transformedLogFile);
+    }
+
+    // A lock is only ever removed by the thread holding it, so a thread that got hold of a lock that was removed in
+    // the meantime tries again with the one that replaced it.
+    private ReentrantLock lock(Path transformedLogFile) {
+        while (true) {
+            ReentrantLock lock = transformedLogFileLocks.computeIfAbsent(transformedLogFile, ignored -> new ReentrantLock());
+            lock.lock();
+            if (transformedLogFileLocks.get(transformedLogFile) == lock) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
+
+    // Returns null if the transformed file is in use.
+    private ReentrantLock tryLock(Path transformedLogFile) {
+        ReentrantLock lock = transformedLogFileLocks.computeIfAbsent(transformedLogFile, ignored -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            return null;
+        }
+        if (transformedLogFileLocks.get(transformedLogFile) != lock) {
+            lock.unlock();
+            return null;
+        }
+        return lock;
+    }
+
+    // The lock of a transformed file without a writer is dropped, so there is no lock left for a file that is done.
+    private void unlock(Path transformedLogFile, ReentrantLock lock) {
+        if (!openWriters.containsKey(transformedLogFile)) {
+            transformedLogFileLocks.remove(transformedLogFile, lock);
+        }
+        lock.unlock();
+    }
+
+    private record OpenWriter(String fileKey, Path logFile, long outputSegment, TransformedLogWriter writer, long lastCommitMillis) {
+
+        OpenWriter committedAt(long commitMillis) {
+            return new OpenWriter(fileKey, logFile, outputSegment, writer, commitMillis);
+        }
+    }
+}
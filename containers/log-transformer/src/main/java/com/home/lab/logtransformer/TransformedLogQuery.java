@@ -0,0 +1,131 @@
+package com.home.lab.logtransformer;
+
+import com.home.lab.logtransformer.TransformedLogIndex.OutputRange;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Prints the lines of the transformed files that were transformed from one time up to, but not including, another:
+// java -cp log-transformer.jar com.home.lab.logtransformer.TransformedLogQuery from=2025-01-01T10:00 to=2025-01-01T10:05 path=/tmp/transformed
+public class TransformedLogQuery {
+
+    private static final int KEY_POSITION = 0;
+    private static final int VALUE_POSITION = 1;
+    private static final long MAX_MAPPED_WINDOW_BYTES = 256L * 1024 * 1024;
+
+    public static void main(String[] args) {
+        try {
+            Query query = extractQuery(args);
+            List<Path> transformedLogFiles = findTransformedLogFiles(query.path());
+            try (FileChannel standardOutput = new FileOutputStream(FileDescriptor.out).getChannel()) {
+                boolean printFileNames = transformedLogFiles.size() > 1;
+                for (Path transformedLogFile : transformedLogFiles) {
+                    Optional<OutputRange> outputRange = TransformedLogIndex.findRange(transformedLogFile, query.fromMillis(), query.toMillis());
+                    if (outputRange.isPresent()) {
+                        if (printFileNames) {
+                            writeFully(standardOutput, ByteBuffer.wrap("==> %s <==%n".formatted(transformedLogFile).getBytes(StandardCharsets.UTF_8)));
+                        }
+                        writeRange(transformedLogFile, outputRange.get(), standardOutput);
+                    }
+                }
+            }
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // A directory is queried file by file, in the order of their names, which for the segments of one log file is
+    // the order they were written in. Files without an index, such as compressed ones, cannot be queried.
+    private static List<Path> findTransformedLogFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            List<Path> transformedLogFiles = files
+                    .filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(TransformedLogIndex.INDEX_FILE_EXTENSION))
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .sorted()
+                    .toList();
+            transformedLogFiles.stream()
+                    .filter(file -> Files.notExists(TransformedLogIndex.indexFileOf(file)))
+                    .forEach(file -> System.err.printf("Skipping %s, since it has no index%n", file));
+            return transformedLogFiles.stream()
+                    .filter(file -> Files.exists(TransformedLogIndex.indexFileOf(file)))
+                    .toList();
+        }
+    }
+
+    // Only the matching part of the file is mapped into memory, in windows of at most 256 MB, so a query costs the
+    // same no matter how large the file is.
+    private static void writeRange(Path transformedLogFile, OutputRange outputRange, FileChannel standardOutput) throws IOException {
+        try (FileChannel transformedLogFileChannel = FileChannel.open(transformedLogFile, StandardOpenOption.READ)) {
+            long windowStart = outputRange.startOffset();
+            while (windowStart < outputRange.endOffset()) {
+                long windowSize = Math.min(outputRange.endOffset() - windowStart, MAX_MAPPED_WINDOW_BYTES);
+                MappedByteBuffer window = transformedLogFileChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+                writeFully(standardOutput, window);
+                windowStart += windowSize;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel standardOutput, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            standardOutput.write(buffer);
+        }
+    }
+
+    private static Query extractQuery(String[] args) {
+        String[] values = new String[3];
+        Arrays.stream(args)
+                .map(arg -> arg.split("=", 2))
+                .forEach(keyValuePair -> {
+                    if (keyValuePair.length != 2) {
+                        throw new IllegalArgumentException("Invalid argument: expected key=value, got " + String.join("=", keyValuePair));
+                    }
+                    switch (keyValuePair[KEY_POSITION]) {
+                        case "from" -> values[0] = keyValuePair[VALUE_POSITION];
+                        case "to" -> values[1] = keyValuePair[VALUE_POSITION];
+                        case "path" -> values[2] = keyValuePair[VALUE_POSITION];
+                        default -> throw new IllegalArgumentException("Invalid argument: unknown key " + keyValuePair[KEY_POSITION]);
+                    }
+                });
+        if (values[0] == null || values[1] == null || values[2] == null) {
+            throw new IllegalArgumentException("Invalid arguments: from, to and path are required");
+        }
+        long fromMillis = parseTimeMillis("from", values[0]);
+        long toMillis = parseTimeMillis("to", values[1]);
+        if (fromMillis >= toMillis) {
+            throw new IllegalArgumentException("Invalid arguments: from must be before to");
+        }
+        return new Query(fromMillis, toMillis, Path.of(values[2]));
+    }
+
+    // The times are local, like the ones appended to the transformed lines, for example 2025-01-01T10:05:30.
+    private static long parseTimeMillis(String key, String value) {
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (Exception exception) {
+            throw new IllegalArgumentException("Invalid input for argument %s: expected a local date and time, such as 2025-01-01T10:05".formatted(key));
+        }
+    }
+
+    private record Query(long fromMillis, long toMillis, Path path) {
+    }
+}
@@ -0,0 +1,207 @@
+package com.home.lab.logtransformer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class TransformedLogWriter implements AutoCloseable {
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Blocks are compressed by the compression workers, each of which reuses its own compressor.
+    private static final ThreadLocal<GzipBlockCompressor> COMPRESSOR = ThreadLocal.withInitial(GzipBlockCompressor::new);
+
+    private final FileChannel transformedLogFileChannel;
+    private final ExecutorService compressionExecutor;
+    private final TransformedLogIndex index;
+    private ByteBuffer outputBuffer;
+    private ByteBuffer spareOutputBuffer;
+    private Future<?> pendingCompression;
+    // Advanced by the compression workers as well, and read while they may still be writing.
+    private volatile long outputOffset;
+    private long sourceByteOffset;
+    private long committedSourceByteOffset;
+    private long committedOutputOffset;
+
+    private TransformedLogWriter(FileChannel transformedLogFileChannel, ByteBuffer spareOutputBuffer, ExecutorService compressionExecutor,
+                                 TransformedLogIndex index) throws IOException {
+        this.transformedLogFileChannel = transformedLogFileChannel;
+        this.index = index;
+        this.outputBuffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        this.spareOutputBuffer = spareOutputBuffer;
+        this.compressionExecutor = compressionExecutor;
+        this.outputOffset = transformedLogFileChannel.size();
+        this.committedOutputOffset = outputOffset;
+    }
+
+    // A writer stays open across passes, so each one has its own buffers.
+    public static TransformedLogWriter open(Path transformedLogFile) throws IOException {
+        return new TransformedLogWriter(openChannel(transformedLogFile), null, null, null);
+    }
+
+    // Only uncompressed output is indexed, since an offset into a gzip file can't be read from without the bytes before it.
+    public static TransformedLogWriter openIndexed(Path transformedLogFile, long indexIntervalBytes) throws IOException {
+        FileChannel transformedLogFileChannel = openChannel(transformedLogFile);
+        try {
+            TransformedLogIndex index = TransformedLogIndex.open(transformedLogFile, transformedLogFileChannel.size(), indexIntervalBytes);
+            return new TransformedLogWriter(transformedLogFileChannel, null, null, index);
+        } catch (IOException exception) {
+            transformedLogFileChannel.close();
+            throw exception;
+        }
+    }
+
+    // Every full buffer is handed over to the compression executor, which compresses it into a gzip member and
+    // appends it to the file, while the transformation continues filling the spare buffer. At most one block per file
+    // is compressed at a time, so the blocks are written in order.
+    public static TransformedLogWriter openGzip(Path transformedLogFile, ExecutorService compressionExecutor) throws IOException {
+        return new TransformedLogWriter(openChannel(transformedLogFile), ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE), compressionExecutor, null);
+    }
+
+    // Called once after opening, with the offset in the log file from which the transformation continues.
+    public void resumeFrom(long sourceByteOffset) {
+        this.sourceByteOffset = sourceByteOffset;
+        this.committedSourceByteOffset = sourceByteOffset;
+    }
+
+    // Marks everything written so far as the transformation of the log file up to the given offset.
+    public void advanceSourceByteOffset(long sourceByteOffset) {
+        this.sourceByteOffset = sourceByteOffset;
+    }
+
+    // Makes everything written so far durable, so the log file never has to be transformed again up to the source
+    // offset, and the transformed file can be cut back to the returned output offset after a crash.
+    public void commit() throws IOException {
+        flush();
+        awaitPendingCompression();
+        transformedLogFileChannel.force(false);
+        committedSourceByteOffset = sourceByteOffset;
+        // Taken from the file itself, so it is the end of everything committed to it, no matter who wrote it.
+        committedOutputOffset = transformedLogFileChannel.size();
+        outputOffset = committedOutputOffset;
+        if (index != null) {
+            index.commit();
+        }
+    }
+
+    // Called before every line, so the index can point at the line that starts with the next byte written.
+    public void startLine() {
+        if (index != null) {
+            index.lineStartsAt(outputOffset + outputBuffer.position());
+        }
+    }
+
+    public boolean hasUncommittedOutput() {
+        return sourceByteOffset != committedSourceByteOffset;
+    }
+
+    // Bytes not committed yet, either still in the buffer before compression or already written to the file.
+    public long uncommittedBytes() {
+        return outputOffset - committedOutputOffset + outputBuffer.position();
+    }
+
+    public long committedSourceByteOffset() {
+        return committedSourceByteOffset;
+    }
+
+    public long committedOutputOffset() {
+        return committedOutputOffset;
+    }
+
+    public void write(ByteBuffer source, int offset, int length) throws IOException {
+        if (outputBuffer.remaining() < length) {
+            flush();
+        }
+        if (outputBuffer.remaining() < length) {
+            writeBlock(source.slice(offset, length));
+            return;
+        }
+        outputBuffer.put(outputBuffer.position(), source, offset, length);
+        outputBuffer.position(outputBuffer.position() + length);
+    }
+
+    public void write(byte[] source) throws IOException {
+        if (outputBuffer.remaining() < source.length) {
+            flush();
+        }
+        if (outputBuffer.remaining() < source.length) {
+            writeBlock(ByteBuffer.wrap(source));
+            return;
+        }
+        outputBuffer.put(source);
+    }
+
+    public void flush() throws IOException {
+        if (compressionExecutor == null) {
+            writeFully(outputBuffer.flip());
+            outputBuffer.clear();
+            return;
+        }
+        if (outputBuffer.position() == 0) {
+            return;
+        }
+        awaitPendingCompression();
+        ByteBuffer block = outputBuffer.flip();
+        pendingCompression = compressionExecutor.submit(() -> {
+            writeFully(COMPRESSOR.get().compress(block));
+            return null;
+        });
+        outputBuffer = spareOutputBuffer.clear();
+        spareOutputBuffer = block;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            awaitPendingCompression();
+        } finally {
+            transformedLogFileChannel.close();
+            if (index != null) {
+                index.close();
+            }
+        }
+    }
+
+    // A block that doesn't fit into the buffer is compressed right away on the calling thread.
+    private void writeBlock(ByteBuffer block) throws IOException {
+        if (compressionExecutor == null) {
+            writeFully(block);
+            return;
+        }
+        awaitPendingCompression();
+        writeFully(COMPRESSOR.get().compress(block));
+    }
+
+    private void awaitPendingCompression() throws IOException {
+        if (pendingCompression == null) {
+            return;
+        }
+        try {
+            pendingCompression.get();
+            pendingCompression = null;
+        } catch (ExecutionException exception) {
+            throw exception.getCause() instanceof IOException ioException
+                    ? ioException
+                    : new IOException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a block to be compressed");
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            outputOffset += transformedLogFileChannel.write(buffer);
+        }
+    }
+
+    private static FileChannel openChannel(Path transformedLogFile) throws IOException {
+        return FileChannel.open(transformedLogFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,133 @@
+package com.home.lab.logtransformer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryLogFormatTest {
+
+    private static final long TIMESTAMP_NANOS = 1_700_000_000_123_456_789L;
+    private static final int WARN = 3;
+    private static final int UNKNOWN_LEVEL = 42;
+
+    @TempDir
+    private Path directory;
+    private Path logFile;
+
+    @BeforeEach
+    void setUp() {
+        logFile = directory.resolve("app.log");
+    }
+
+    // The timestamp is rendered in local time with all nine digits of the nanoseconds, and line terminators in the
+    // payload become spaces, so the record stays a single line.
+    @Test
+    void recordIsRenderedAsASingleTextLine() {
+        ByteBuffer rendered = render(record(TIMESTAMP_NANOS, WARN, "first\nsecond\r\n"));
+
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, TIMESTAMP_NANOS), ZoneId.systemDefault());
+        String expectedTimestamp = "%04d-%02d-%02dT%02d:%02d:%02d.123456789".formatted(dateTime.getYear(), dateTime.getMonthValue(),
+                dateTime.getDayOfMonth(), dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond());
+        assertEquals(expectedTimestamp + " WARN first second  ", asString(rendered));
+    }
+
+    // A level written by a newer logger is still rendered, instead of failing the whole file.
+    @Test
+    void unknownLevelIsRenderedAsUnknown() {
+        ByteBuffer rendered = render(record(TIMESTAMP_NANOS, UNKNOWN_LEVEL, "payload"));
+
+        assertTrue(asString(rendered).endsWith(" UNKNOWN payload"));
+    }
+
+    @Test
+    void corruptPayloadLengthIsReported() {
+        ByteBuffer negativeLength = ByteBuffer.allocate(BinaryLogFormat.RECORD_HEADER_SIZE).putInt(0, -1);
+        ByteBuffer excessiveLength = ByteBuffer.allocate(BinaryLogFormat.RECORD_HEADER_SIZE).putInt(0, BinaryLogFormat.MAX_PAYLOAD_LENGTH + 1);
+
+        assertThrows(IOException.class, () -> BinaryLogFormat.payloadLength(negativeLength, 0, 0));
+        assertThrows(IOException.class, () -> BinaryLogFormat.payloadLength(excessiveLength, 0, 0));
+    }
+
+    // A file is only binary once its whole header is written, so a file caught in the middle of writing it is left alone.
+    @Test
+    void binaryLogFileIsDetectedByItsCompleteHeader() throws IOException {
+        assertTrue(isBinaryLogFile(BinaryLogFormat.FILE_HEADER));
+        assertFalse(isBinaryLogFile(Arrays.copyOf(BinaryLogFormat.FILE_HEADER, BinaryLogFormat.FILE_HEADER.length - 1)));
+        assertFalse(isBinaryLogFile("text log line\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Every complete record is transformed, and a trailing record that is still being written is left for a later
+    // pass, with the returned offset right before it.
+    @Test
+    void incompleteTrailingRecordIsLeftForTheNextPass() throws IOException {
+        ByteBuffer firstRecord = record(TIMESTAMP_NANOS, WARN, "first");
+        ByteBuffer secondRecord = record(TIMESTAMP_NANOS, WARN, "second");
+        ByteBuffer incompleteRecord = record(TIMESTAMP_NANOS, WARN, "third").limit(BinaryLogFormat.RECORD_HEADER_SIZE + 2);
+        long completeRecordsEnd = BinaryLogFormat.FILE_HEADER.length + firstRecord.remaining() + secondRecord.remaining();
+        try (FileChannel logFileChannel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            logFileChannel.write(new ByteBuffer[]{ByteBuffer.wrap(BinaryLogFormat.FILE_HEADER), firstRecord, secondRecord, incompleteRecord});
+            Path transformedLogFile = directory.resolve("transformed-app.log");
+            long processedByteOffset;
+            try (TransformedLogWriter writer = TransformedLogWriter.open(transformedLogFile)) {
+                processedByteOffset = new LogFileTransformer(this::copyLine).transformBinary(logFileChannel, 0, writer);
+            }
+
+            assertEquals(completeRecordsEnd, processedByteOffset);
+            List<String> transformedLines = Files.readAllLines(transformedLogFile);
+            assertEquals(2, transformedLines.size());
+            assertTrue(transformedLines.get(0).endsWith(" WARN first"));
+            assertTrue(transformedLines.get(1).endsWith(" WARN second"));
+        }
+    }
+
+    private boolean copyLine(ByteBuffer source, int lineStart, int lineEnd, TransformedLogWriter writer) throws IOException {
+        writer.write(source, lineStart, lineEnd - lineStart);
+        return true;
+    }
+
+    private boolean isBinaryLogFile(byte[] content) throws IOException {
+        Files.write(logFile, content);
+        try (FileChannel logFileChannel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            return BinaryLogFormat.isBinaryLogFile(logFileChannel);
+        }
+    }
+
+    private static ByteBuffer record(long timestampNanos, int level, String payload) {
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(BinaryLogFormat.RECORD_HEADER_SIZE + payloadBytes.length)
+                .putInt(payloadBytes.length)
+                .putLong(timestampNanos)
+                .put((byte) level)
+                .put(payloadBytes)
+                .flip();
+    }
+
+    private static ByteBuffer render(ByteBuffer record) {
+        int payloadLength = record.remaining() - BinaryLogFormat.RECORD_HEADER_SIZE;
+        ByteBuffer rendered = ByteBuffer.allocate(BinaryLogFormat.MAX_RENDERED_PREFIX_LENGTH + payloadLength);
+        BinaryLogFormat.render(record, 0, payloadLength, rendered);
+        return rendered;
+    }
+
+    private static String asString(ByteBuffer rendered) {
+        return new String(rendered.array(), 0, rendered.position(), StandardCharsets.UTF_8);
+    }
+}
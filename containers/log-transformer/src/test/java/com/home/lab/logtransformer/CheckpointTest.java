@@ -0,0 +1,127 @@
+package com.home.lab.logtransformer;
+
+import com.home.lab.logtransformer.FileStateIndex.FileState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CheckpointTest {
+
+    private static final long NEVER_DUE_MILLIS = 60000;
+    private static final int SHARD_COUNT = 2;
+    private static final String OTHER_NODE_DEVICE = "dev=999999";
+
+    @TempDir
+    private Path directory;
+    private Path logFile;
+    private Path checkpointFile;
+    private String fileKey;
+    private FileStateIndex fileStateIndex;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        logFile = Files.writeString(directory.resolve("app.log"), "line\n");
+        checkpointFile = directory.resolve(".checkpoint");
+        fileKey = String.valueOf(Files.readAttributes(logFile, BasicFileAttributes.class).fileKey());
+        fileStateIndex = new FileStateIndex(100, NEVER_DUE_MILLIS);
+    }
+
+    // After the number of shards changed, the file moved to an instance on another node, which sees the same inode under
+    // a different device number. It must continue from the offset its previous owner committed.
+    @Test
+    void fileMovedToAnInstanceOnAnotherNodeContinuesFromTheCommittedOffset() throws IOException {
+        int owner = new ShardAssignment(0, SHARD_COUNT).shardOf(fileKey);
+        writeCheckpoint(shardCheckpointFile(SHARD_COUNT - 1 - owner), entry(otherNodeFileKey(), 42, 100));
+
+        Checkpoint.load(checkpointFile, new ShardAssignment(owner, SHARD_COUNT), fileStateIndex);
+
+        FileState fileState = fileStateIndex.get(fileKey);
+        assertEquals(42, fileState.committedByteOffset());
+        assertEquals(100, fileState.committedOutputOffset());
+        assertEquals(logFile, fileState.logFile());
+    }
+
+    // The checkpoint of an old owner that was never updated again and the one of the owner after it are written on
+    // different nodes, and the file continues from the furthest offset of both.
+    @Test
+    void fileFoundInSeveralCheckpointsOfDifferentNodesContinuesFromTheFurthestOffset() throws IOException {
+        int owner = new ShardAssignment(0, SHARD_COUNT).shardOf(fileKey);
+        writeCheckpoint(shardCheckpointFile(owner), entry(fileKey, 10, 20));
+        writeCheckpoint(shardCheckpointFile(SHARD_COUNT - 1 - owner), entry(otherNodeFileKey(), 42, 100));
+
+        Checkpoint.load(checkpointFile, new ShardAssignment(owner, SHARD_COUNT), fileStateIndex);
+
+        assertEquals(1, fileStateIndex.size());
+        assertEquals(42, fileStateIndex.get(fileKey).committedByteOffset());
+    }
+
+    // Checkpoints written before output offsets were tracked only hold the byte offset, the modification time, the file
+    // key and the path, and they don't start with the output compression either.
+    @Test
+    void checkpointWithoutOutputOffsetsContinuesFromTheCommittedOffset() throws IOException {
+        Files.writeString(checkpointFile, String.join("\t", "42", "0", fileKey, logFile.toString()) + "\n");
+
+        Checkpoint.load(checkpointFile, ShardAssignment.SINGLE_SHARD, fileStateIndex);
+
+        FileState fileState = fileStateIndex.get(fileKey);
+        assertEquals(42, fileState.committedByteOffset());
+        assertEquals(FileStateIndex.UNKNOWN_OUTPUT_OFFSET, fileState.committedOutputOffset());
+        assertEquals(FileStateIndex.NO_OUTPUT_SEGMENT, fileState.outputSegment());
+        assertEquals(logFile, fileState.logFile());
+    }
+
+    // Checkpoints written before output segments were tracked have one field less, which a path containing the
+    // separator followed by a number must not make up for.
+    @Test
+    void checkpointWithoutOutputSegmentsReadsAPathContainingTheSeparatorAsAWhole() throws IOException {
+        Path logFileWithSeparator = Files.writeString(directory.resolve("app\t7.log"), "line\n");
+        String fileKeyWithSeparator = String.valueOf(Files.readAttributes(logFileWithSeparator, BasicFileAttributes.class).fileKey());
+        writeCheckpoint(checkpointFile, String.join("\t", "42", "0", fileKeyWithSeparator, "100", logFileWithSeparator.toString()));
+
+        Checkpoint.load(checkpointFile, ShardAssignment.SINGLE_SHARD, fileStateIndex);
+
+        FileState fileState = fileStateIndex.get(fileKeyWithSeparator);
+        assertEquals(42, fileState.committedByteOffset());
+        assertEquals(100, fileState.committedOutputOffset());
+        assertEquals(FileStateIndex.NO_OUTPUT_SEGMENT, fileState.outputSegment());
+        assertEquals(logFileWithSeparator, fileState.logFile());
+    }
+
+    // The current format additionally holds the output segment the committed output offset belongs to.
+    @Test
+    void checkpointWithOutputSegmentsContinuesInTheCommittedSegment() throws IOException {
+        writeCheckpoint(checkpointFile, String.join("\t", "42", "0", fileKey, "100", "3", logFile.toString()));
+
+        Checkpoint.load(checkpointFile, ShardAssignment.SINGLE_SHARD, fileStateIndex);
+
+        FileState fileState = fileStateIndex.get(fileKey);
+        assertEquals(42, fileState.committedByteOffset());
+        assertEquals(100, fileState.committedOutputOffset());
+        assertEquals(3, fileState.outputSegment());
+        assertEquals(logFile, fileState.logFile());
+    }
+
+    private String otherNodeFileKey() {
+        return fileKey.replaceFirst("dev=[^,]+", OTHER_NODE_DEVICE);
+    }
+
+    private Path shardCheckpointFile(int shard) {
+        return new ShardAssignment(shard, SHARD_COUNT).checkpointFileOf(checkpointFile);
+    }
+
+    private String entry(String fileKey, long committedByteOffset, long committedOutputOffset) {
+        return String.join("\t", String.valueOf(committedByteOffset), "0", fileKey, String.valueOf(committedOutputOffset),
+                String.valueOf(FileStateIndex.NO_OUTPUT_SEGMENT), logFile.toString());
+    }
+
+    private void writeCheckpoint(Path pathToCheckpointFile, String... entries) throws IOException {
+        Files.writeString(pathToCheckpointFile, "output\tNONE\n" + String.join("\n", entries) + "\n");
+    }
+}
@@ -0,0 +1,76 @@
+package com.home.lab.logtransformer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private static final double MAX_RELATIVE_ERROR = 0.125;
+
+    private LatencyHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        assertEquals(0, histogram.valueAtQuantileNanos(0.5));
+        assertEquals(0, histogram.valueAtQuantileNanos(1.0));
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.sumNanos());
+    }
+
+    // Values below the number of sub-buckets get a bucket of their own, so they are reported exactly.
+    @Test
+    void smallValuesAreExact() {
+        for (long value = 0; value < 8; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(3, histogram.valueAtQuantileNanos(0.5));
+        assertEquals(7, histogram.valueAtQuantileNanos(1.0));
+    }
+
+    // A quantile is reported as the upper bound of its bucket, which is never below the recorded value and never more
+    // than 1/8 above it, over the whole range of values.
+    @Test
+    void largeValuesAreReportedWithinTheRelativePrecision() {
+        for (long value : new long[]{8, 1000, 123_456_789, 60_000_000_000L, Long.MAX_VALUE / 2}) {
+            LatencyHistogram singleValueHistogram = new LatencyHistogram();
+            singleValueHistogram.record(value);
+
+            long reportedValue = singleValueHistogram.valueAtQuantileNanos(1.0);
+            assertTrue(reportedValue >= value, "Reported %d for %d".formatted(reportedValue, value));
+            assertTrue(reportedValue <= value + value * MAX_RELATIVE_ERROR, "Reported %d for %d".formatted(reportedValue, value));
+        }
+    }
+
+    // A single outlier only shows up in the quantiles above the share of the values it makes up.
+    @Test
+    void outlierOnlyShowsUpInTheHighestQuantile() {
+        for (int value = 0; value < 99; value++) {
+            histogram.record(1000);
+        }
+        histogram.record(1_000_000);
+
+        assertTrue(histogram.valueAtQuantileNanos(0.99) < 1_000 + 1_000 * MAX_RELATIVE_ERROR);
+        assertTrue(histogram.valueAtQuantileNanos(1.0) >= 1_000_000);
+        assertEquals(100, histogram.count());
+        assertEquals(99 * 1000 + 1_000_000, histogram.sumNanos());
+    }
+
+    // A clock that went backwards between the two measurements is recorded as zero, instead of breaking the sum.
+    @Test
+    void negativeValueIsRecordedAsZero() {
+        histogram.record(-5);
+
+        assertEquals(0, histogram.valueAtQuantileNanos(1.0));
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.sumNanos());
+    }
+}
@@ -0,0 +1,98 @@
+package com.home.lab.logtransformer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleChainLineTransformerTest {
+
+    @TempDir
+    private Path directory;
+    private Path transformedLogFile;
+
+    @BeforeEach
+    void setUp() {
+        transformedLogFile = directory.resolve("transformed-app.log");
+    }
+
+    // The literal ends right before the first metacharacter, and a character made optional by a quantifier is not part
+    // of it, since a match doesn't have to contain it.
+    @Test
+    void requiredLiteralIsThePlainPrefixOfTheRegex() {
+        assertEquals("ERROR", RuleChainLineTransformer.findRequiredLiteral("ERROR"));
+        assertEquals("user=", RuleChainLineTransformer.findRequiredLiteral("^user=\\d+"));
+        assertEquals("colo", RuleChainLineTransformer.findRequiredLiteral("colou?r"));
+        assertEquals("timeou", RuleChainLineTransformer.findRequiredLiteral("timeout*"));
+    }
+
+    // An alternation may match either side, and a regex starting with a metacharacter has no plain prefix at all.
+    @Test
+    void regexWithoutPlainPrefixHasNoRequiredLiteral() {
+        assertNull(RuleChainLineTransformer.findRequiredLiteral("ERROR|WARN"));
+        assertNull(RuleChainLineTransformer.findRequiredLiteral("\\d+ ms"));
+        assertNull(RuleChainLineTransformer.findRequiredLiteral("s?"));
+    }
+
+    // A filter before the redaction is hoisted to the raw bytes and sees the line as it was written, while a filter
+    // after the redaction sees the redacted message.
+    @Test
+    void filtersSeeTheMessageAsRedactedByTheRulesBeforeThem() throws IOException {
+        RuleChainLineTransformer lineTransformer = RuleChainLineTransformer.compile(List.of(
+                "include contains password",
+                "redact password=\\S+ password=***",
+                "exclude contains secret"));
+
+        List<String> transformedLines = transform(lineTransformer, "password=hunter2 login", "password=secret login", "login");
+
+        assertEquals(2, transformedLines.size());
+        assertTrue(transformedLines.get(0).startsWith("password=*** login: Transformed at "));
+        assertTrue(transformedLines.get(1).startsWith("password=*** login: Transformed at "));
+    }
+
+    // Lines that the required literal rules out are left alone without running the regex, and lines that contain it
+    // have their named groups extracted as fields.
+    @Test
+    void extractedFieldsAreEncodedAsJson() throws IOException {
+        RuleChainLineTransformer lineTransformer = RuleChainLineTransformer.compile(List.of(
+                "extract user=(?<user>\\w+) took (?<duration>\\d+)ms",
+                "encode json"));
+
+        List<String> transformedLines = transform(lineTransformer, "user=alice took 42ms", "no user here");
+
+        assertTrue(transformedLines.get(0).startsWith("{\"user\":\"alice\",\"duration\":\"42\",\"transformedAt\":"));
+        assertTrue(transformedLines.get(1).startsWith("{\"message\":\"no user here\",\"transformedAt\":"));
+    }
+
+    @Test
+    void invalidRuleFailsTheCompilation() {
+        assertThrows(IllegalStateException.class, () -> RuleChainLineTransformer.compile(List.of("include startsWith ERROR")));
+        assertThrows(IllegalStateException.class, () -> RuleChainLineTransformer.compile(List.of("extract \\d+")));
+    }
+
+    // Writes every line that passes the chain, followed by a line separator, and returns the transformed lines.
+    private List<String> transform(RuleChainLineTransformer lineTransformer, String... lines) throws IOException {
+        try (TransformedLogWriter writer = TransformedLogWriter.open(transformedLogFile)) {
+            for (String line : lines) {
+                ByteBuffer source = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+                writer.startLine();
+                if (lineTransformer.transform(source, 0, source.limit(), writer)) {
+                    writer.write("\n".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            writer.commit();
+        }
+        return Files.readAllLines(transformedLogFile);
+    }
+}
@@ -0,0 +1,84 @@
+package com.home.lab.logtransformer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardAssignmentTest {
+
+    private static final int NUMBER_OF_FILES = 10000;
+    private static final int SHARD_COUNT = 4;
+    private static final Path CHECKPOINT_FILE = Path.of("/var/log-transformer/.checkpoint");
+
+    // Every instance computes the assignment on its own, so they must all agree on a single owner for every file, no
+    // matter on which node they see it.
+    @Test
+    void everyFileIsOwnedByExactlyOneShardOnEveryNode() {
+        ShardAssignment[] shardAssignments = shardAssignments(SHARD_COUNT);
+        for (int inode = 0; inode < NUMBER_OF_FILES; inode++) {
+            int owners = 0;
+            for (ShardAssignment shardAssignment : shardAssignments) {
+                assertEquals(shardAssignments[0].shardOf(fileKey(1, inode)), shardAssignment.shardOf(fileKey(2, inode)));
+                owners += shardAssignment.owns(fileKey(1, inode)) ? 1 : 0;
+            }
+            assertEquals(1, owners);
+        }
+    }
+
+    // The virtual nodes spread the files evenly, so no shard is left with much more than its share.
+    @Test
+    void filesAreSpreadEvenlyOverTheShards() {
+        int[] filesPerShard = new int[SHARD_COUNT];
+        ShardAssignment shardAssignment = new ShardAssignment(0, SHARD_COUNT);
+        for (int inode = 0; inode < NUMBER_OF_FILES; inode++) {
+            filesPerShard[shardAssignment.shardOf(fileKey(1, inode))]++;
+        }
+        for (int files : filesPerShard) {
+            assertTrue(Math.abs(files - NUMBER_OF_FILES / SHARD_COUNT) < NUMBER_OF_FILES / SHARD_COUNT / 5, "Files per shard: " + files);
+        }
+    }
+
+    // Adding a shard only takes files over from the others, and only about its share of them.
+    @Test
+    void addingAShardOnlyMovesFilesToTheNewShard() {
+        ShardAssignment before = new ShardAssignment(0, SHARD_COUNT);
+        ShardAssignment after = new ShardAssignment(0, SHARD_COUNT + 1);
+        int movedFiles = 0;
+        for (int inode = 0; inode < NUMBER_OF_FILES; inode++) {
+            int shardAfter = after.shardOf(fileKey(1, inode));
+            if (before.shardOf(fileKey(1, inode)) != shardAfter) {
+                assertEquals(SHARD_COUNT, shardAfter);
+                movedFiles++;
+            }
+        }
+        assertTrue(movedFiles < NUMBER_OF_FILES * 3 / (2 * (SHARD_COUNT + 1)), "Moved files: " + movedFiles);
+    }
+
+    // A single instance keeps the configured checkpoint file, and only the files of other shards are read on startup,
+    // not the temporary ones they are saved through.
+    @Test
+    void everyShardHasACheckpointFileOfItsOwn() {
+        assertEquals(CHECKPOINT_FILE, ShardAssignment.SINGLE_SHARD.checkpointFileOf(CHECKPOINT_FILE));
+        Path shardCheckpointFile = new ShardAssignment(2, SHARD_COUNT).checkpointFileOf(CHECKPOINT_FILE);
+        assertEquals(CHECKPOINT_FILE.resolveSibling(".checkpoint.shard-2"), shardCheckpointFile);
+        assertTrue(ShardAssignment.isShardCheckpointFile(CHECKPOINT_FILE, shardCheckpointFile));
+        assertFalse(ShardAssignment.isShardCheckpointFile(CHECKPOINT_FILE, CHECKPOINT_FILE.resolveSibling(".checkpoint.shard-2.tmp")));
+        assertFalse(ShardAssignment.isShardCheckpointFile(CHECKPOINT_FILE, CHECKPOINT_FILE.resolveSibling(".checkpoint.shard-")));
+    }
+
+    private static ShardAssignment[] shardAssignments(int shardCount) {
+        ShardAssignment[] shardAssignments = new ShardAssignment[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardAssignments[shard] = new ShardAssignment(shard, shardCount);
+        }
+        return shardAssignments;
+    }
+
+    private static String fileKey(int device, int inode) {
+        return "(dev=%d,ino=%d)".formatted(device, inode);
+    }
+}
@@ -0,0 +1,105 @@
+package com.home.lab.logtransformer;
+
+import com.home.lab.logtransformer.TransformedLogIndex.OutputRange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransformedLogIndexTest {
+
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+    private static final int TRANSFORMED_LOG_FILE_SIZE = 300;
+    private static final long INDEX_INTERVAL_BYTES = 100;
+
+    @TempDir
+    private Path directory;
+    private Path transformedLogFile;
+    private Path indexFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        transformedLogFile = Files.write(directory.resolve("transformed-app.log"), new byte[TRANSFORMED_LOG_FILE_SIZE]);
+        indexFile = TransformedLogIndex.indexFileOf(transformedLogFile);
+    }
+
+    // The range starts at the last entry before its start and ends at the first entry at or after its end, so it holds
+    // every line from the range, and at most an entry's worth of lines from outside of it.
+    @Test
+    void rangeIsWidenedToTheSurroundingEntries() throws IOException {
+        writeIndex(entry(1000, 0), entry(2000, 100), entry(3000, 200));
+
+        assertEquals(Optional.of(new OutputRange(0, 200)), TransformedLogIndex.findRange(transformedLogFile, 1500, 2500));
+        assertEquals(Optional.of(new OutputRange(100, TRANSFORMED_LOG_FILE_SIZE)), TransformedLogIndex.findRange(transformedLogFile, 2500, 3500));
+    }
+
+    // Nothing was transformed before the first entry, and the lines after the last entry were transformed less than a
+    // second after it.
+    @Test
+    void rangeOutsideOfTheIndexedTimesIsEmpty() throws IOException {
+        writeIndex(entry(1000, 0), entry(2000, 100), entry(3000, 200));
+
+        assertEquals(Optional.empty(), TransformedLogIndex.findRange(transformedLogFile, 0, 1000));
+        assertEquals(Optional.empty(), TransformedLogIndex.findRange(transformedLogFile, 4000, 5000));
+    }
+
+    // Without any entry, the whole file has to be read, since nothing says when its lines were transformed.
+    @Test
+    void fileWithoutEntriesIsReadAsAWhole() throws IOException {
+        writeIndex();
+
+        assertEquals(Optional.of(new OutputRange(0, TRANSFORMED_LOG_FILE_SIZE)), TransformedLogIndex.findRange(transformedLogFile, 0, 1000));
+    }
+
+    // After a restart cut the transformed file back, the entries pointing past its end are dropped, together with the
+    // partially written entry a crash left behind.
+    @Test
+    void truncateDropsEntriesPastTheEndAndAPartialEntry() throws IOException {
+        writeIndex(entry(1000, 0), entry(2000, 100), entry(3000, 200), ByteBuffer.allocate(ENTRY_SIZE / 2));
+
+        TransformedLogIndex.truncate(indexFile, TRANSFORMED_LOG_FILE_SIZE);
+        assertEquals(3 * ENTRY_SIZE, Files.size(indexFile));
+
+        TransformedLogIndex.truncate(indexFile, 150);
+        assertEquals(2 * ENTRY_SIZE, Files.size(indexFile));
+    }
+
+    // The first line always gets an entry, and the next one only once an interval of bytes was written after it.
+    // The entries only become visible once the output is committed.
+    @Test
+    void linesGetAnEntryEveryIntervalOfBytesOnceCommitted() throws IOException {
+        try (TransformedLogIndex index = TransformedLogIndex.open(transformedLogFile, TRANSFORMED_LOG_FILE_SIZE, INDEX_INTERVAL_BYTES)) {
+            index.lineStartsAt(0);
+            index.lineStartsAt(INDEX_INTERVAL_BYTES / 2);
+            index.lineStartsAt(INDEX_INTERVAL_BYTES + 1);
+            assertEquals(0, Files.size(indexFile));
+
+            index.commit();
+        }
+
+        assertEquals(2 * ENTRY_SIZE, Files.size(indexFile));
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        assertEquals(0, entries.getLong(Long.BYTES));
+        assertEquals(INDEX_INTERVAL_BYTES + 1, entries.getLong(ENTRY_SIZE + Long.BYTES));
+    }
+
+    private static ByteBuffer entry(long timeMillis, long outputOffset) {
+        return ByteBuffer.allocate(ENTRY_SIZE).putLong(timeMillis).putLong(outputOffset).flip();
+    }
+
+    private void writeIndex(ByteBuffer... entries) throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(entries.length * ENTRY_SIZE);
+        for (ByteBuffer entry : entries) {
+            index.put(entry);
+        }
+        Files.write(indexFile, Arrays.copyOf(index.array(), index.position()));
+    }
+}
@@ -0,0 +1,90 @@
+package com.home.lab.logtransformer;
+
+import com.home.lab.logtransformer.FileStateIndex.FileState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransformedLogOutputTest {
+
+    private static final long NEVER_DUE_MILLIS = 60000;
+    private static final long NEVER_DUE_BYTES = 1024 * 1024;
+    private static final String ROTATED_FILE_KEY = "(dev=1,ino=1)";
+    private static final String NEW_FILE_KEY = "(dev=1,ino=2)";
+    private static final byte[] ROTATED_LINE = "line of the rotated file\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEW_LINE = "line of the new file\n".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path directory;
+    private Path logFile;
+    private Path rotatedLogFile;
+    private Path transformedLogFile;
+    private FileStateIndex fileStateIndex;
+    private TransformedLogOutput transformedLogOutput;
+
+    @BeforeEach
+    void setUp() {
+        logFile = directory.resolve("app.log");
+        rotatedLogFile = directory.resolve("app.log.1");
+        transformedLogFile = directory.resolve("transformed-app.log");
+        fileStateIndex = new FileStateIndex(100, NEVER_DUE_MILLIS);
+        transformedLogOutput = new TransformedLogOutput(fileStateIndex, null, NEVER_DUE_MILLIS, NEVER_DUE_BYTES, TransformedLogIndex.NO_INDEX);
+    }
+
+    // app.log is transformed, but its output is not committed yet, when it is renamed to app.log.1 and a new app.log
+    // is created. The new file writes to the same transformed file, so it must start after the output of the old one.
+    @Test
+    void newFileAfterRotationStartsAfterTheUncommittedOutputOfTheRotatedFile() throws IOException {
+        transform(ROTATED_FILE_KEY, ROTATED_LINE);
+        fileStateIndex.put(ROTATED_FILE_KEY, fileStateIndex.get(ROTATED_FILE_KEY).renamedTo(rotatedLogFile));
+
+        long newFileStartOffset = transform(NEW_FILE_KEY, NEW_LINE);
+        transformedLogOutput.close();
+
+        assertEquals(ROTATED_LINE.length, newFileStartOffset);
+        assertEquals(new String(ROTATED_LINE, StandardCharsets.UTF_8) + new String(NEW_LINE, StandardCharsets.UTF_8),
+                Files.readString(transformedLogFile));
+        assertEquals(ROTATED_LINE.length, fileStateIndex.get(ROTATED_FILE_KEY).committedByteOffset());
+        assertEquals(FileStateIndex.UNKNOWN_OUTPUT_OFFSET, fileStateIndex.get(ROTATED_FILE_KEY).committedOutputOffset());
+        assertEquals(NEW_LINE.length, fileStateIndex.get(NEW_FILE_KEY).committedByteOffset());
+        assertEquals(Files.size(transformedLogFile), fileStateIndex.get(NEW_FILE_KEY).committedOutputOffset());
+    }
+
+    // A restart cuts the transformed file back to the committed output offset of the new file, which must keep every
+    // line that was committed, including those of the rotated file.
+    @Test
+    void committedOutputOffsetOfNewFileCoversEveryCommittedLine() throws IOException {
+        transform(ROTATED_FILE_KEY, ROTATED_LINE);
+        transform(NEW_FILE_KEY, NEW_LINE);
+        transformedLogOutput.close();
+
+        long committedOutputOffset = fileStateIndex.get(NEW_FILE_KEY).committedOutputOffset();
+        assertEquals(ROTATED_LINE.length + NEW_LINE.length, committedOutputOffset);
+        assertEquals(Files.size(transformedLogFile), committedOutputOffset);
+    }
+
+    // Does what a transformation worker does for a single pass over a log file, and returns the output offset it was
+    // registered at before its first line was written.
+    private long transform(String fileKey, byte[] line) throws IOException {
+        TransformedLogWriter writer = transformedLogOutput.acquireWriter(fileKey, logFile, transformedLogFile, FileStateIndex.NO_OUTPUT_SEGMENT,
+                false, 0);
+        try {
+            long startOffset = writer.committedOutputOffset();
+            fileStateIndex.put(fileKey, new FileState(logFile, 0, 0, 0, FileStateIndex.NO_OUTPUT_SEGMENT, startOffset, System.currentTimeMillis()));
+            writer.write(line);
+            fileStateIndex.put(fileKey, new FileState(logFile, 0, line.length, writer.committedSourceByteOffset(), FileStateIndex.NO_OUTPUT_SEGMENT,
+                    writer.committedOutputOffset(), System.currentTimeMillis()));
+            transformedLogOutput.transformed(transformedLogFile, line.length);
+            return startOffset;
+        } finally {
+            transformedLogOutput.releaseWriter(transformedLogFile);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.home.lab.logger;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+public class BinaryLogFormat {
+
+    // Starts every binary log file, so a reader can tell it apart from a text log file by its content alone, even
+    // after it was renamed while rotating. The first byte can never start a line of UTF-8 text.
+    public static final byte[] FILE_HEADER = {(byte) 0x89, 'H', 'L', 'O', 'G', 1};
+
+    // Payload length (int), timestamp in epoch nanoseconds (long) and level (byte), followed by the payload.
+    public static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES + Byte.BYTES;
+
+    // The payload is encoded right behind the space left for the header first, so the record is framed in place
+    // without copying the payload again.
+    public static void putRecordHeader(ByteBuffer buffer, int recordStart, int payloadLength, Instant timestamp, Level level) {
+        buffer.putInt(recordStart, payloadLength)
+                .putLong(recordStart + Integer.BYTES, timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano())
+                .put(recordStart + Integer.BYTES + Long.BYTES, (byte) level.ordinal());
+    }
+
+    // The ordinal of a level is what ends up in the record, so new levels may only be added at the end.
+    public enum Level {
+        TRACE,
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+}
@@ -1,5 +1,8 @@
 package com.home.lab.logger;
 
+import com.home.lab.logger.EmissionPlan.LogFormat;
+import com.home.lab.logger.FileSink.FsyncPolicy;
+
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Optional;
@@ -13,7 +16,7 @@ public class CommandLineArgumentExtractor {
         CommandLineArguments commandLineArguments = new CommandLineArguments();
         Arrays.stream(args)
                 .filter(arg -> !arg.isBlank() || !arg.contains("="))
-                .map(arg -> arg.split("="))
+                .map(arg -> arg.split("=", 2))
                 .forEach(keyValuePair -> {
                     if (keyValuePair.length != 2) {
                         throw new IllegalArgumentException();
@@ -30,6 +33,16 @@ public class CommandLineArgumentExtractor {
             case "ltso" -> extractProduceLogsToStandardOutputArgument(commandLineArguments, value);
             case "ltf" -> extractProduceLogsToFileArgument(commandLineArguments, value);
             case "plf" -> extractPathToLogFileArgument(commandLineArguments, value);
+            case "fbs" -> extractFileBufferSizeArgument(commandLineArguments, value);
+            case "ffi" -> extractFileFlushIntervalArgument(commandLineArguments, value);
+            case "fsp" -> extractFsyncPolicyArgument(commandLineArguments, value);
+            case "fsi" -> extractFsyncIntervalArgument(commandLineArguments, value);
+            case "mfs" -> extractMaxFileSizeArgument(commandLineArguments, value);
+            case "pt" -> extractProducerThreadsArgument(commandLineArguments, value);
+            case "tlps" -> extractTargetLinesPerSecondArgument(commandLineArguments, value);
+            case "ms" -> extractMessageSizeArgument(commandLineArguments, value);
+            case "plt" -> extractPayloadTemplateArgument(commandLineArguments, value);
+            case "lfm" -> extractLogFileFormatArgument(commandLineArguments, value);
         }
     }
 
@@ -73,11 +86,128 @@ public class CommandLineArgumentExtractor {
         }
     }
 
+    private static void extractFileBufferSizeArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            int fileBufferSize = Integer.parseInt(value);
+            if (fileBufferSize <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument fbs (FileBufferSize): it must be a positive number");
+            }
+            commandLineArguments.setFileBufferSize(fileBufferSize);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument fbs (FileBufferSize): the number could not be parsed");
+        }
+    }
+
+    private static void extractFileFlushIntervalArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            long fileFlushIntervalMillis = Long.parseLong(value);
+            if (fileFlushIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument ffi (FileFlushInterval): it must be a positive number");
+            }
+            commandLineArguments.setFileFlushIntervalMillis(fileFlushIntervalMillis);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument ffi (FileFlushInterval): the number could not be parsed");
+        }
+    }
+
+    private static void extractFsyncPolicyArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            commandLineArguments.setFsyncPolicy(FsyncPolicy.valueOf(value.toUpperCase()));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid input for argument fsp (FsyncPolicy): the value must be either 'none', 'interval' or 'batch'");
+        }
+    }
+
+    private static void extractFsyncIntervalArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            long fsyncIntervalMillis = Long.parseLong(value);
+            if (fsyncIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument fsi (FsyncInterval): it must be a positive number");
+            }
+            commandLineArguments.setFsyncIntervalMillis(fsyncIntervalMillis);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument fsi (FsyncInterval): the number could not be parsed");
+        }
+    }
+
+    private static void extractMaxFileSizeArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            long maxFileSizeBytes = Long.parseLong(value);
+            if (maxFileSizeBytes < 0) {
+                throw new IllegalArgumentException("Invalid input for argument mfs (MaxFileSize): it cannot be a negative number");
+            }
+            commandLineArguments.setMaxFileSizeBytes(maxFileSizeBytes);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument mfs (MaxFileSize): the number could not be parsed");
+        }
+    }
+
+    private static void extractProducerThreadsArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            int producerThreads = Integer.parseInt(value);
+            if (producerThreads <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument pt (ProducerThreads): it must be a positive number");
+            }
+            commandLineArguments.setProducerThreads(producerThreads);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument pt (ProducerThreads): the number could not be parsed");
+        }
+    }
+
+    private static void extractTargetLinesPerSecondArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            long targetLinesPerSecond = Long.parseLong(value);
+            if (targetLinesPerSecond <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument tlps (TargetLinesPerSecond): it must be a positive number");
+            }
+            commandLineArguments.setTargetLinesPerSecond(targetLinesPerSecond);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument tlps (TargetLinesPerSecond): the number could not be parsed");
+        }
+    }
+
+    private static void extractMessageSizeArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            int messageSize = Integer.parseInt(value);
+            if (messageSize <= 0) {
+                throw new IllegalArgumentException("Invalid input for argument ms (MessageSize): it must be a positive number");
+            }
+            commandLineArguments.setMessageSize(messageSize);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid input for argument ms (MessageSize): the number could not be parsed");
+        }
+    }
+
+    private static void extractPayloadTemplateArgument(CommandLineArguments commandLineArguments, String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Invalid input for argument plt (PayloadTemplate): the value must not be empty");
+        }
+        commandLineArguments.setPayloadTemplate(value);
+    }
+
+    private static void extractLogFileFormatArgument(CommandLineArguments commandLineArguments, String value) {
+        try {
+            commandLineArguments.setLogFileFormat(LogFormat.valueOf(value.toUpperCase()));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid input for argument lfm (LogFileFormat): the value must be either 'text' or 'binary'");
+        }
+    }
+
     public static class CommandLineArguments {
         private Integer numberOfLogsToProduce;
         private Boolean produceLogsToStandardOutput;
         private Boolean produceLogsToFile;
         private Path pathToLogFile;
+        private Integer fileBufferSize;
+        private Long fileFlushIntervalMillis;
+        private FsyncPolicy fsyncPolicy;
+        private Long fsyncIntervalMillis;
+        private Long maxFileSizeBytes;
+        private Integer producerThreads;
+        private Long targetLinesPerSecond;
+        private Integer messageSize;
+        private String payloadTemplate;
+        private LogFormat logFileFormat;
 
         public Optional<Integer> getNumberOfLogsToProduce() {
             return Optional.ofNullable(numberOfLogsToProduce);
@@ -110,5 +240,85 @@ public class CommandLineArgumentExtractor {
         public void setPathToLogFile(Path pathToLogFile) {
             this.pathToLogFile = pathToLogFile;
         }
+
+        public Optional<Integer> getFileBufferSize() {
+            return Optional.ofNullable(fileBufferSize);
+        }
+
+        public void setFileBufferSize(Integer fileBufferSize) {
+            this.fileBufferSize = fileBufferSize;
+        }
+
+        public Optional<Long> getFileFlushIntervalMillis() {
+            return Optional.ofNullable(fileFlushIntervalMillis);
+        }
+
+        public void setFileFlushIntervalMillis(Long fileFlushIntervalMillis) {
+            this.fileFlushIntervalMillis = fileFlushIntervalMillis;
+        }
+
+        public Optional<FsyncPolicy> getFsyncPolicy() {
+            return Optional.ofNullable(fsyncPolicy);
+        }
+
+        public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+            this.fsyncPolicy = fsyncPolicy;
+        }
+
+        public Optional<Long> getFsyncIntervalMillis() {
+            return Optional.ofNullable(fsyncIntervalMillis);
+        }
+
+        public void setFsyncIntervalMillis(Long fsyncIntervalMillis) {
+            this.fsyncIntervalMillis = fsyncIntervalMillis;
+        }
+
+        public Optional<Long> getMaxFileSizeBytes() {
+            return Optional.ofNullable(maxFileSizeBytes);
+        }
+
+        public void setMaxFileSizeBytes(Long maxFileSizeBytes) {
+            this.maxFileSizeBytes = maxFileSizeBytes;
+        }
+
+        public Optional<Integer> getProducerThreads() {
+            return Optional.ofNullable(producerThreads);
+        }
+
+        public void setProducerThreads(Integer producerThreads) {
+            this.producerThreads = producerThreads;
+        }
+
+        public Optional<Long> getTargetLinesPerSecond() {
+            return Optional.ofNullable(targetLinesPerSecond);
+        }
+
+        public void setTargetLinesPerSecond(Long targetLinesPerSecond) {
+            this.targetLinesPerSecond = targetLinesPerSecond;
+        }
+
+        public Optional<Integer> getMessageSize() {
+            return Optional.ofNullable(messageSize);
+        }
+
+        public void setMessageSize(Integer messageSize) {
+            this.messageSize = messageSize;
+        }
+
+        public Optional<String> getPayloadTemplate() {
+            return Optional.ofNullable(payloadTemplate);
+        }
+
+        public void setPayloadTemplate(String payloadTemplate) {
+            this.payloadTemplate = payloadTemplate;
+        }
+
+        public Optional<LogFormat> getLogFileFormat() {
+            return Optional.ofNullable(logFileFormat);
+        }
+
+        public void setLogFileFormat(LogFormat logFileFormat) {
+            this.logFileFormat = logFileFormat;
+        }
     }
 }
@@ -0,0 +1,35 @@
+package com.home.lab.logger;
+
+// The command line arguments resolved once into everything the producers need, so producing a log doesn't
+// have to look up any of the arguments again.
+public record EmissionPlan(long numberOfLogsToProduce,
+                           int producerThreads,
+                           long targetLinesPerSecond,
+                           PayloadTemplate payloadTemplate,
+                           boolean produceLogsToStandardOutput,
+                           FileSink fileSink,
+                           LogFormat fileLogFormat) {
+
+    public static final long INFINITE_NUMBER_OF_LOGS = -1;
+    public static final long UNLIMITED_LINES_PER_SECOND = 0;
+
+    // The logs are split as evenly as possible, with the first producers taking the remainder.
+    public long numberOfLogsForProducer(int producer) {
+        if (numberOfLogsToProduce == INFINITE_NUMBER_OF_LOGS) {
+            return INFINITE_NUMBER_OF_LOGS;
+        }
+        return numberOfLogsToProduce / producerThreads + (producer < numberOfLogsToProduce % producerThreads ? 1 : 0);
+    }
+
+    public double intervalBetweenLogsNanos() {
+        if (targetLinesPerSecond == UNLIMITED_LINES_PER_SECOND) {
+            return 0;
+        }
+        return 1_000_000_000.0 * producerThreads / targetLinesPerSecond;
+    }
+
+    public enum LogFormat {
+        TEXT,
+        BINARY
+    }
+}
@@ -0,0 +1,220 @@
+package com.home.lab.logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class FileSink implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.NONE;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1000;
+    public static final long NO_ROTATION = 0;
+    public static final byte[] NO_FILE_HEADER = new byte[0];
+
+    private final Path pathToLogFile;
+    private final Configuration configuration;
+    private final List<ByteBuffer> producerBuffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<ByteBuffer> producerBuffer;
+    private final Thread flushThread;
+    private FileChannel logFileChannel;
+    private long logFileSize;
+    private long lastFsyncMillis;
+
+    private FileSink(Path pathToLogFile, Configuration configuration) throws IOException {
+        this.pathToLogFile = pathToLogFile;
+        this.configuration = configuration;
+        this.producerBuffer = ThreadLocal.withInitial(this::registerProducerBuffer);
+        this.lastFsyncMillis = System.currentTimeMillis();
+        openLogFile();
+        this.flushThread = Thread.ofPlatform()
+                .name("File Sink Flush Thread")
+                .daemon()
+                .start(this::flushPeriodically);
+    }
+
+    // Keeps a single channel open for the whole lifetime of the logger and collects the messages of every producer
+    // thread in a buffer of its own, which is written out once it is full, or at the latest after the flush interval,
+    // so a slow producer still makes its logs visible to readers of the file in time.
+    public static FileSink open(Path pathToLogFile, Configuration configuration) throws IOException {
+        return new FileSink(pathToLogFile, configuration);
+    }
+
+    // A producer only locks its own buffer, which no other producer touches, and only takes the lock of the file
+    // once its buffer is full. The producers therefore don't serialize on every single message.
+    public void write(ByteBuffer logMessage) throws IOException {
+        ByteBuffer buffer = producerBuffer.get();
+        synchronized (buffer) {
+            if (buffer.remaining() < logMessage.remaining()) {
+                writeOut(buffer);
+            }
+            if (buffer.remaining() < logMessage.remaining()) {
+                writeBatch(logMessage);
+                return;
+            }
+            buffer.put(logMessage);
+        }
+    }
+
+    public void flush() throws IOException {
+        for (ByteBuffer buffer : producerBuffers) {
+            synchronized (buffer) {
+                writeOut(buffer);
+            }
+        }
+    }
+
+    // The buffers are written out before the lock of the file is taken, since a buffer is always locked first.
+    @Override
+    public void close() throws IOException {
+        flushThread.interrupt();
+        synchronized (this) {
+            if (!logFileChannel.isOpen()) {
+                return;
+            }
+        }
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                try {
+                    if (logFileChannel.isOpen() && configuration.fsyncPolicy() != FsyncPolicy.NONE) {
+                        fsync();
+                    }
+                } finally {
+                    logFileChannel.close();
+                }
+            }
+        }
+    }
+
+    private ByteBuffer registerProducerBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(configuration.bufferSize());
+        producerBuffers.add(buffer);
+        return buffer;
+    }
+
+    private void writeOut(ByteBuffer buffer) throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        writeBatch(buffer.flip());
+        buffer.clear();
+    }
+
+    // A batch only holds complete messages and is never split across two files.
+    private synchronized void writeBatch(ByteBuffer batch) throws IOException {
+        if (configuration.maxFileSizeBytes() != NO_ROTATION
+                && logFileSize + batch.remaining() > configuration.maxFileSizeBytes()
+                && logFileSize > configuration.fileHeader().length) {
+            rotate();
+        }
+        writeFully(batch);
+        switch (configuration.fsyncPolicy()) {
+            case NONE -> {
+            }
+            case INTERVAL -> {
+                if (System.currentTimeMillis() - lastFsyncMillis >= configuration.fsyncIntervalMillis()) {
+                    fsync();
+                }
+            }
+            case BATCH -> fsync();
+        }
+    }
+
+    // The full file is closed before it is renamed, so it only ever contains complete lines and is never written
+    // again. The logs are then continued in a new, empty file with the original name.
+    private void rotate() throws IOException {
+        if (configuration.fsyncPolicy() != FsyncPolicy.NONE) {
+            fsync();
+        }
+        logFileChannel.close();
+        Files.move(pathToLogFile, findPathToRotatedLogFile(), StandardCopyOption.ATOMIC_MOVE);
+        openLogFile();
+    }
+
+    private Path findPathToRotatedLogFile() {
+        long rotationSuffix = System.currentTimeMillis();
+        Path pathToRotatedLogFile;
+        do {
+            pathToRotatedLogFile = pathToLogFile.resolveSibling("%s.%d".formatted(pathToLogFile.getFileName(), rotationSuffix++));
+        } while (Files.exists(pathToRotatedLogFile));
+        return pathToRotatedLogFile;
+    }
+
+    // Every new file starts with the file header, including the ones created after a rotation. A file left behind in
+    // the other format by a previous run is rotated away first, so text and binary logs never end up in the same file.
+    private void openLogFile() throws IOException {
+        if (Files.exists(pathToLogFile) && !hasConfiguredFormat()) {
+            Files.move(pathToLogFile, findPathToRotatedLogFile(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        logFileChannel = FileChannel.open(pathToLogFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        logFileSize = logFileChannel.size();
+        if (logFileSize == 0) {
+            writeFully(ByteBuffer.wrap(configuration.fileHeader()));
+        }
+    }
+
+    // A text log file has no header, so it only has the configured format as long as it doesn't start with the one of
+    // a binary log file. An empty file has either format.
+    private boolean hasConfiguredFormat() throws IOException {
+        boolean binaryFormatConfigured = configuration.fileHeader().length > 0;
+        byte[] expectedFileHeader = binaryFormatConfigured ? configuration.fileHeader() : BinaryLogFormat.FILE_HEADER;
+        ByteBuffer fileHeader = ByteBuffer.allocate(expectedFileHeader.length);
+        try (FileChannel existingLogFileChannel = FileChannel.open(pathToLogFile, StandardOpenOption.READ)) {
+            if (existingLogFileChannel.size() == 0) {
+                return true;
+            }
+            while (fileHeader.hasRemaining()) {
+                if (existingLogFileChannel.read(fileHeader) == -1) {
+                    break;
+                }
+            }
+        }
+        boolean startsWithExpectedFileHeader = Arrays.equals(fileHeader.array(), 0, fileHeader.position(), expectedFileHeader, 0, expectedFileHeader.length);
+        return binaryFormatConfigured == startsWithExpectedFileHeader;
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            logFileSize += logFileChannel.write(bytes);
+        }
+    }
+
+    private void fsync() throws IOException {
+        logFileChannel.force(false);
+        lastFsyncMillis = System.currentTimeMillis();
+    }
+
+    private void flushPeriodically() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(configuration.flushIntervalMillis());
+                flush();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (IOException exception) {
+            exception.printStackTrace();
+            System.err.printf("Could not flush the logs to the file %s. Shutting down the flush thread.%n", pathToLogFile.getFileName());
+        }
+    }
+
+    public enum FsyncPolicy {
+        NONE,
+        INTERVAL,
+        BATCH
+    }
+
+    public record Configuration(int bufferSize, long flushIntervalMillis, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis, long maxFileSizeBytes,
+                                byte[] fileHeader) {
+    }
+}
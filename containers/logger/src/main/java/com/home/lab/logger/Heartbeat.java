@@ -1,27 +1,49 @@
 package com.home.lab.logger;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 
 public class Heartbeat {
 
     private static final String DEFAULT_PATH_TO_HEARTBEAT_FILE = "/tmp/heartbeat/heartbeat";
-    private static final long TIMEOUT_BETWEEN_HEARTBEATS = 10000;
+    private static final long TIMEOUT_BETWEEN_HEARTBEATS = 100;
+    // Monitors that still watch the modification time of the file only need it to change every few seconds.
+    private static final long TIMEOUT_BETWEEN_MODIFIED_TIME_UPDATES = 10000;
+    private static final int HEARTBEAT_COUNTER_SIZE = Long.BYTES;
+    private static final VarHandle HEARTBEAT_COUNTER = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
 
+    // The heartbeat is a daemon thread, so it never keeps the logger alive once the producers are done.
     public static void startHeartbeatThread() {
-        new Thread(Heartbeat::performHeartbeat).start();
+        Thread.ofPlatform()
+                .name("Heartbeat Thread")
+                .daemon()
+                .start(Heartbeat::performHeartbeat);
     }
 
+    // The first 8 bytes of the heartbeat file are mapped into memory and used as a counter, which is incremented on
+    // every beat. A beat is a single store to memory shared with the monitor through the page cache, without a system
+    // call, so it can run often enough for the monitor to notice a stalled logger within a fraction of a second.
     private static void performHeartbeat() {
-        try {
-            Path pathToHeartbeatFile = Path.of(DEFAULT_PATH_TO_HEARTBEAT_FILE);
-            if (Files.notExists(pathToHeartbeatFile)) {
-                Files.createFile(pathToHeartbeatFile);
-            }
+        Path pathToHeartbeatFile = Path.of(DEFAULT_PATH_TO_HEARTBEAT_FILE);
+        try (FileChannel heartbeatFileChannel = FileChannel.open(pathToHeartbeatFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer heartbeatCounter = heartbeatFileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEARTBEAT_COUNTER_SIZE);
+            long lastModifiedTimeUpdateMillis = 0;
             while (true) {
-                Files.setLastModifiedTime(pathToHeartbeatFile, FileTime.from(Instant.now()));
+                long beat = (long) HEARTBEAT_COUNTER.getAcquire(heartbeatCounter, 0) + 1;
+                HEARTBEAT_COUNTER.setRelease(heartbeatCounter, 0, beat);
+                if (System.currentTimeMillis() - lastModifiedTimeUpdateMillis >= TIMEOUT_BETWEEN_MODIFIED_TIME_UPDATES) {
+                    Files.setLastModifiedTime(pathToHeartbeatFile, FileTime.from(Instant.now()));
+                    lastModifiedTimeUpdateMillis = System.currentTimeMillis();
+                }
                 Thread.sleep(TIMEOUT_BETWEEN_HEARTBEATS);
             }
         } catch (Exception exception) {
@@ -1,23 +1,49 @@
 package com.home.lab.logger;
 
+import com.home.lab.logger.BinaryLogFormat.Level;
 import com.home.lab.logger.CommandLineArgumentExtractor.CommandLineArguments;
+import com.home.lab.logger.EmissionPlan.LogFormat;
+import com.home.lab.logger.FileSink.Configuration;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 
 public class Logger {
 
+    private static final int DEFAULT_PRODUCER_THREADS = 1;
+    private static final String DEFAULT_PAYLOAD_TEMPLATE = "{timestamp}";
+    // Binary records carry their own timestamp, so it is left out of the payload by default.
+    private static final String DEFAULT_BINARY_PAYLOAD_TEMPLATE = "{producer}:{sequence}";
+    private static final LogFormat DEFAULT_LOG_FILE_FORMAT = LogFormat.TEXT;
+    private static final int NO_MESSAGE_SIZE = 0;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final int INITIAL_ENCODED_LOG_BUFFER_SIZE = 1024;
+
+    // Each producer thread encodes every log into the same buffer, which the file sink copies from, instead of
+    // allocating a new byte array per log. Malformed text is replaced just like String.getBytes does.
+    private static final ThreadLocal<ByteBuffer> ENCODED_LOG_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_ENCODED_LOG_BUFFER_SIZE));
+    private static final ThreadLocal<CharsetEncoder> UTF_8_ENCODER = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
     public static void main(String[] args) {
         try {
             Heartbeat.startHeartbeatThread();
             CommandLineArguments commandLineArguments = CommandLineArgumentExtractor.extractCommandLineArguments(args);
-            commandLineArguments.getNumberOfLogsToProduce()
-                    .ifPresentOrElse(
-                            numberOfLogsToProduce -> produceFixedNumberOfLogs(numberOfLogsToProduce, commandLineArguments),
-                            () -> produceInfiniteNumberOfLogs(commandLineArguments)
-                    );
+            EmissionPlan emissionPlan = resolveEmissionPlan(commandLineArguments);
+            // Logs still sitting in the buffer of the file sink are written out on every kind of exit.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeFileSink(emissionPlan)));
+            produceLogs(emissionPlan);
             System.exit(0);
         } catch (Exception exception) {
             System.err.println(exception.getMessage());
@@ -25,49 +51,137 @@ public class Logger {
         }
     }
 
-    private static void produceFixedNumberOfLogs(Integer numberOfLogsToProduce, CommandLineArguments commandLineArguments) {
-        for (int i = 0; i < numberOfLogsToProduce; i++) {
-            produceLog(commandLineArguments);
+    static EmissionPlan resolveEmissionPlan(CommandLineArguments commandLineArguments) {
+        int messageSize = commandLineArguments.getMessageSize().orElse(NO_MESSAGE_SIZE);
+        LogFormat logFileFormat = commandLineArguments.getLogFileFormat().orElse(DEFAULT_LOG_FILE_FORMAT);
+        String defaultPayloadTemplate = logFileFormat == LogFormat.BINARY ? DEFAULT_BINARY_PAYLOAD_TEMPLATE : DEFAULT_PAYLOAD_TEMPLATE;
+        return new EmissionPlan(
+                commandLineArguments.getNumberOfLogsToProduce().map(Integer::longValue).orElse(EmissionPlan.INFINITE_NUMBER_OF_LOGS),
+                commandLineArguments.getProducerThreads().orElse(DEFAULT_PRODUCER_THREADS),
+                commandLineArguments.getTargetLinesPerSecond().orElse(EmissionPlan.UNLIMITED_LINES_PER_SECOND),
+                PayloadTemplate.compile(commandLineArguments.getPayloadTemplate().orElse(defaultPayloadTemplate), messageSize),
+                commandLineArguments.getProduceLogsToStandardOutput().orElse(false),
+                openFileSink(commandLineArguments, logFileFormat),
+                logFileFormat);
+    }
+
+    private static void produceLogs(EmissionPlan emissionPlan) throws InterruptedException {
+        ThreadFactory producerThreadFactory = Thread.ofPlatform().name("Log Producer Thread-", 0).factory();
+        try (ExecutorService producers = Executors.newFixedThreadPool(emissionPlan.producerThreads(), producerThreadFactory)) {
+            List<Future<?>> producedLogs = new ArrayList<>();
+            for (int producer = 0; producer < emissionPlan.producerThreads(); producer++) {
+                int currentProducer = producer;
+                producedLogs.add(producers.submit(() -> produceLogs(emissionPlan, currentProducer)));
+            }
+            for (Future<?> producedLog : producedLogs) {
+                producedLog.get();
+            }
+        } catch (ExecutionException exception) {
+            throw exception.getCause() instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new IllegalStateException(exception.getCause());
         }
     }
 
-    private static void produceInfiniteNumberOfLogs(CommandLineArguments commandLineArguments) {
-        while (true) {
-            produceLog(commandLineArguments);
+    // Each log has a fixed point in time at which it is due, counted from the start of the producer. A producer that
+    // falls behind, because of a slow write or a GC pause, catches up by producing the overdue logs right away,
+    // instead of shifting the rest of the schedule, so the target rate holds over the whole run.
+    private static void produceLogs(EmissionPlan emissionPlan, int producer) {
+        long numberOfLogsToProduce = emissionPlan.numberOfLogsForProducer(producer);
+        double intervalBetweenLogsNanos = emissionPlan.intervalBetweenLogsNanos();
+        long startNanos = System.nanoTime();
+        for (long sequence = 0; numberOfLogsToProduce == EmissionPlan.INFINITE_NUMBER_OF_LOGS || sequence < numberOfLogsToProduce; sequence++) {
+            if (intervalBetweenLogsNanos > 0) {
+                waitUntil(startNanos + (long) (sequence * intervalBetweenLogsNanos));
+            }
+            produceLog(emissionPlan, producer, sequence);
         }
     }
 
-    private static void produceLog(CommandLineArguments commandLineArguments) {
-        String logMessage = LocalDateTime.now().toString();
-        commandLineArguments.getProduceLogsToStandardOutput()
-                .ifPresent(produceLogsToStandardOutput -> {
-                    if (produceLogsToStandardOutput) writeToStandardOutput(logMessage);
-                });
-        commandLineArguments.getProduceLogsToFile()
-                .ifPresent(produceLogsToFile -> {
-                    if (produceLogsToFile) {
-                        commandLineArguments.getPathToLogFile()
-                                .ifPresentOrElse(
-                                        pathToFile -> writeToFile(logMessage, pathToFile),
-                                        () -> {
-                                            throw new IllegalArgumentException("Invalid configuration state: to produce logs to a file, a path to a file must be specified");
-                                        });
-                    }
-                });
+    private static void waitUntil(long dueNanos) {
+        long remainingNanos;
+        while ((remainingNanos = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remainingNanos);
+        }
+    }
+
+    static void produceLog(EmissionPlan emissionPlan, int producer, long sequence) {
+        String logMessage = emissionPlan.payloadTemplate().render(producer, sequence);
+        if (emissionPlan.produceLogsToStandardOutput()) {
+            writeToStandardOutput(logMessage);
+        }
+        if (emissionPlan.fileSink() != null) {
+            writeToFile(emissionPlan.fileSink(), encodeForFile(emissionPlan.fileLogFormat(), logMessage));
+        }
+    }
+
+    private static FileSink openFileSink(CommandLineArguments commandLineArguments, LogFormat logFileFormat) {
+        if (!commandLineArguments.getProduceLogsToFile().orElse(false)) {
+            return null;
+        }
+        Path pathToLogFile = commandLineArguments.getPathToLogFile()
+                .orElseThrow(() -> new IllegalArgumentException("Invalid configuration state: to produce logs to a file, a path to a file must be specified"));
+        Configuration configuration = new Configuration(
+                commandLineArguments.getFileBufferSize().orElse(FileSink.DEFAULT_BUFFER_SIZE),
+                commandLineArguments.getFileFlushIntervalMillis().orElse(FileSink.DEFAULT_FLUSH_INTERVAL_MILLIS),
+                commandLineArguments.getFsyncPolicy().orElse(FileSink.DEFAULT_FSYNC_POLICY),
+                commandLineArguments.getFsyncIntervalMillis().orElse(FileSink.DEFAULT_FSYNC_INTERVAL_MILLIS),
+                commandLineArguments.getMaxFileSizeBytes().orElse(FileSink.NO_ROTATION),
+                logFileFormat == LogFormat.BINARY ? BinaryLogFormat.FILE_HEADER : FileSink.NO_FILE_HEADER);
+        try {
+            return FileSink.open(pathToLogFile, configuration);
+        } catch (IOException exception) {
+            System.err.printf("Could not open the log file %s%n", pathToLogFile.getFileName());
+            exception.printStackTrace();
+            throw new IllegalStateException(exception.getMessage());
+        }
+    }
+
+    static void closeFileSink(EmissionPlan emissionPlan) {
+        if (emissionPlan.fileSink() == null) {
+            return;
+        }
+        try {
+            emissionPlan.fileSink().close();
+        } catch (IOException exception) {
+            System.err.println("Could not write the remaining logs to the file");
+            exception.printStackTrace();
+        }
     }
 
     private static void writeToStandardOutput(String logMessage) {
         System.out.println(logMessage);
     }
 
-    private static void writeToFile(String logMessage, Path pathToFile) {
+    // A binary record is framed by its length instead of a line separator, so the payload may contain line breaks.
+    // The buffer grows up front to the most bytes the message can take, so the message is always encoded in one go.
+    private static ByteBuffer encodeForFile(LogFormat logFileFormat, String logMessage) {
+        int payloadStart = logFileFormat == LogFormat.BINARY ? BinaryLogFormat.RECORD_HEADER_SIZE : 0;
+        CharsetEncoder encoder = UTF_8_ENCODER.get().reset();
+        int maxEncodedLength = payloadStart + (int) (logMessage.length() * encoder.maxBytesPerChar()) + LINE_SEPARATOR.length;
+        ByteBuffer encodedLog = ENCODED_LOG_BUFFER.get();
+        if (encodedLog.capacity() < maxEncodedLength) {
+            encodedLog = ByteBuffer.allocate(Math.max(maxEncodedLength, encodedLog.capacity() * 2));
+            ENCODED_LOG_BUFFER.set(encodedLog);
+        }
+        encodedLog.clear().position(payloadStart);
+        encoder.encode(CharBuffer.wrap(logMessage), encodedLog, true);
+        encoder.flush(encodedLog);
+        if (logFileFormat == LogFormat.BINARY) {
+            BinaryLogFormat.putRecordHeader(encodedLog, 0, encodedLog.position() - payloadStart, Instant.now(), Level.INFO);
+        } else {
+            encodedLog.put(LINE_SEPARATOR);
+        }
+        return encodedLog.flip();
+    }
+
+    private static void writeToFile(FileSink fileSink, ByteBuffer log) {
         try {
-            Files.writeString(pathToFile, logMessage);
+            fileSink.write(log);
         } catch (IOException exception) {
-            System.err.printf("Could not produce a log to the file %s%n", pathToFile.getFileName());
+            System.err.println("Could not produce a log to the file");
             exception.printStackTrace();
             throw new IllegalStateException(exception.getMessage());
         }
     }
 }
-
@@ -0,0 +1,93 @@
+package com.home.lab.logger;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PayloadTemplate {
+
+    private static final String TIMESTAMP_PLACEHOLDER = "{timestamp}";
+    private static final String SEQUENCE_PLACEHOLDER = "{sequence}";
+    private static final String PRODUCER_PLACEHOLDER = "{producer}";
+    private static final char PADDING = '.';
+
+    // Every producer thread renders its messages into its own builder.
+    private static final ThreadLocal<StringBuilder> MESSAGE_BUILDER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final Segment[] segments;
+    private final int messageSize;
+
+    private PayloadTemplate(Segment[] segments, int messageSize) {
+        this.segments = segments;
+        this.messageSize = messageSize;
+    }
+
+    // The template is split into literal text and placeholders once, so rendering a message is a single pass
+    // over the segments without searching for placeholders again.
+    public static PayloadTemplate compile(String template, int messageSize) {
+        List<Segment> segments = new ArrayList<>();
+        int literalStart = 0;
+        int index = 0;
+        while (index < template.length()) {
+            Segment placeholder = findPlaceholder(template, index);
+            if (placeholder == null) {
+                index++;
+                continue;
+            }
+            if (literalStart < index) {
+                segments.add(new Segment(SegmentType.LITERAL, template.substring(literalStart, index)));
+            }
+            segments.add(placeholder);
+            index += placeholder.text().length();
+            literalStart = index;
+        }
+        if (literalStart < template.length()) {
+            segments.add(new Segment(SegmentType.LITERAL, template.substring(literalStart)));
+        }
+        return new PayloadTemplate(segments.toArray(Segment[]::new), messageSize);
+    }
+
+    // Without a message size the message is left as rendered, otherwise it is padded or cut to exactly that length.
+    public String render(int producer, long sequence) {
+        StringBuilder message = MESSAGE_BUILDER.get();
+        message.setLength(0);
+        for (Segment segment : segments) {
+            switch (segment.type()) {
+                case LITERAL -> message.append(segment.text());
+                case TIMESTAMP -> message.append(LocalDateTime.now());
+                case SEQUENCE -> message.append(sequence);
+                case PRODUCER -> message.append(producer);
+            }
+        }
+        if (messageSize > 0) {
+            while (message.length() < messageSize) {
+                message.append(PADDING);
+            }
+            message.setLength(messageSize);
+        }
+        return message.toString();
+    }
+
+    private static Segment findPlaceholder(String template, int index) {
+        if (template.startsWith(TIMESTAMP_PLACEHOLDER, index)) {
+            return new Segment(SegmentType.TIMESTAMP, TIMESTAMP_PLACEHOLDER);
+        }
+        if (template.startsWith(SEQUENCE_PLACEHOLDER, index)) {
+            return new Segment(SegmentType.SEQUENCE, SEQUENCE_PLACEHOLDER);
+        }
+        if (template.startsWith(PRODUCER_PLACEHOLDER, index)) {
+            return new Segment(SegmentType.PRODUCER, PRODUCER_PLACEHOLDER);
+        }
+        return null;
+    }
+
+    private enum SegmentType {
+        LITERAL,
+        TIMESTAMP,
+        SEQUENCE,
+        PRODUCER
+    }
+
+    private record Segment(SegmentType type, String text) {
+    }
+}